@@ -0,0 +1,99 @@
+/**
+ * Copyright 2024 Ryan Fitz-Gerald
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to 
+ * deal in the Software without restriction, including without limitation the 
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or 
+ * sell copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING 
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER 
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package frc.lib2960.bench;
+
+import frc.lib2960.subsystems.SwerveDriveBase;
+import frc.lib2960.subsystems.SwerveModuleBase;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+
+/**
+ * SwerveDriveBase with stationary simulated modules and gyro for benchmarking
+ */
+public class BenchSwerveDrive extends SwerveDriveBase {
+    /**
+     * Swerve module with a fixed angle and position
+     */
+    public static class Module extends SwerveModuleBase {
+        private final Rotation2d angle = new Rotation2d();  /**< Module angle */
+
+        /**
+         * Constructor
+         * @param   settings    module settings
+         */
+        public Module(Settings settings) {
+            super(settings);
+        }
+
+        @Override
+        public Rotation2d getAnglePos() { return angle; }
+
+        @Override
+        public double getAngleRate() { return 0; }
+
+        @Override
+        public double getAngleVolt() { return 0; }
+
+        @Override
+        public double getDrivePos() { return 0; }
+
+        @Override
+        public double getDriveRate() { return 0; }
+
+        @Override
+        public double getDriveVolt() { return 0; }
+
+        @Override
+        public void setAngleVolt(double volt) {}
+
+        @Override
+        public void setDriveVolt(double volt) {}
+    }
+
+    private final Rotation2d angle = new Rotation2d();  /**< Robot angle */
+
+    /**
+     * Constructor
+     * @param   settings    drivetrain settings
+     * @param   modules     list of module used in the drivetrain
+     */
+    public BenchSwerveDrive(Settings settings, SwerveModuleBase[] modules) {
+        super(settings, modules);
+    }
+
+    /**
+     * Runs the kinematics update
+     * @param   x_speed     Desired x speed
+     * @param   y_speed     Desired y speed
+     * @param   r_speed     Desired angle rate in radians per second
+     */
+    public void runKinematics(double x_speed, double y_speed, double r_speed) {
+        updateKinematics(x_speed, y_speed, r_speed);
+    }
+
+    @Override
+    public Rotation2d getAngle() { return angle; }
+
+    @Override
+    public double getAngleRate() { return 0; }
+}
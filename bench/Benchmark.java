@@ -0,0 +1,144 @@
+/**
+ * Copyright 2024 Ryan Fitz-Gerald
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to 
+ * deal in the Software without restriction, including without limitation the 
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or 
+ * sell copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING 
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER 
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package frc.lib2960.bench;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Minimal headless micro-benchmark runner. Reports the average time and heap allocation per 
+ * operation in the same units as JMH with the GC profiler (ns/op and B/op). Does not depend on 
+ * any libraries beyond the JDK so it can be compiled with the rest of lib2960.
+ */
+public class Benchmark {
+    /**
+     * Benchmark result
+     */
+    public static class Result {
+        public final String name;           /**< Benchmark name */
+        public final double ns_per_op;      /**< Average time per operation in nanoseconds */
+        public final double ns_error;       /**< Standard deviation across iterations */
+        public final double bytes_per_op;   /**< Average heap allocation per operation in bytes */
+
+        /**
+         * Constructor
+         * @param   name            Benchmark name
+         * @param   ns_per_op       Average time per operation in nanoseconds
+         * @param   ns_error        Standard deviation across iterations
+         * @param   bytes_per_op    Average heap allocation per operation in bytes
+         */
+        public Result(String name, double ns_per_op, double ns_error, double bytes_per_op) {
+            this.name = name;
+            this.ns_per_op = ns_per_op;
+            this.ns_error = ns_error;
+            this.bytes_per_op = bytes_per_op;
+        }
+
+        /**
+         * Formats the result as a table row
+         * @return  formatted result
+         */
+        @Override
+        public String toString() {
+            return String.format("%-48s %12.1f ± %8.1f ns/op %10.2f B/op", 
+                                 name, ns_per_op, ns_error, bytes_per_op);
+        }
+    }
+
+    private static final com.sun.management.ThreadMXBean threads = 
+        (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+    public final int warmup_iterations;     /**< Number of warmup iterations */
+    public final int measure_iterations;    /**< Number of measured iterations */
+    public final int ops_per_iteration;     /**< Operations per iteration */
+
+    /**
+     * Constructor
+     * @param   warmup_iterations   Number of warmup iterations
+     * @param   measure_iterations  Number of measured iterations
+     * @param   ops_per_iteration   Operations per iteration
+     */
+    public Benchmark(int warmup_iterations, int measure_iterations, int ops_per_iteration) {
+        this.warmup_iterations = warmup_iterations;
+        this.measure_iterations = measure_iterations;
+        this.ops_per_iteration = ops_per_iteration;
+    }
+
+    /**
+     * Constructor
+     *      - warmup_iterations is set to 5
+     *      - measure_iterations is set to 10
+     *      - ops_per_iteration is set to 100000
+     */
+    public Benchmark() {
+        this(5, 10, 100000);
+    }
+
+    /**
+     * Runs a benchmark
+     * @param   name    Benchmark name
+     * @param   op      Operation to benchmark
+     * @return  benchmark result
+     */
+    public Result run(String name, Runnable op) {
+        // Warmup
+        for(int i = 0; i < warmup_iterations; i++) {
+            for(int j = 0; j < ops_per_iteration; j++) op.run();
+        }
+
+        // Measure allocation reporting overhead
+        long alloc_overhead = allocatedBytes();
+        alloc_overhead = allocatedBytes() - alloc_overhead;
+
+        double sum = 0;
+        double sum_sq = 0;
+        long total_bytes = 0;
+
+        for(int i = 0; i < measure_iterations; i++) {
+            long start_bytes = allocatedBytes();
+            long start = System.nanoTime();
+
+            for(int j = 0; j < ops_per_iteration; j++) op.run();
+
+            long end = System.nanoTime();
+            total_bytes += Math.max(0, allocatedBytes() - start_bytes - alloc_overhead);
+
+            double ns_per_op = (double)(end - start) / ops_per_iteration;
+            sum += ns_per_op;
+            sum_sq += ns_per_op * ns_per_op;
+        }
+
+        double mean = sum / measure_iterations;
+        double error = Math.sqrt(Math.max(0, sum_sq / measure_iterations - mean * mean));
+        double bytes_per_op = (double)total_bytes / ((long)measure_iterations * ops_per_iteration);
+
+        return new Result(name, mean, error, bytes_per_op);
+    }
+
+    /**
+     * Gets the number of bytes allocated by the current thread
+     * @return  bytes allocated by the current thread
+     */
+    public static long allocatedBytes() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,737 @@
+/**
+ * Copyright 2024 Ryan Fitz-Gerald
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to 
+ * deal in the Software without restriction, including without limitation the 
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or 
+ * sell copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING 
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER 
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package frc.lib2960.bench;
+
+import java.util.ArrayList;
+
+import frc.lib2960.controllers.*;
+import frc.lib2960.oi.*;
+import frc.lib2960.planner.*;
+import frc.lib2960.subsystems.*;
+import frc.lib2960.util.*;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.wpilibj.Joystick;
+
+/**
+ * Runs the lib2960 benchmark suite headless against simulated hardware. Exits with a non-zero 
+ * status if a benchmark required to be allocation free allocates or a behavior check fails.
+ */
+public class BenchmarkMain {
+    /**
+     * Button with a directly settable state
+     */
+    public static class BenchButton extends ButtonBase {
+        public boolean state = false;   /**< Button state */
+
+        @Override
+        public boolean pressed() {
+            return state;
+        }
+    }
+
+    /**
+     * Simulated mechanism with scheduler free control wrappers
+     */
+    public static class SimBench extends SimMotorMechanism {
+        /**
+         * Constructor
+         * @param   settings    Mechanism settings
+         * @param   plant       Plant feedforward parameters
+         * @param   hard_limits Hard stops
+         */
+        public SimBench(Settings settings, FFParam plant, Limits hard_limits) {
+            super(settings, plant, DCMotor.getNEO(2), 2 * Math.PI * 10, hard_limits);
+        }
+
+        /**
+         * Runs one position control cycle
+         * @param   target_pos  target position
+         */
+        public void runPosition(double target_pos) {
+            updateSnapshot();
+            updatePosition(target_pos);
+        }
+
+        /**
+         * Runs one rate control cycle
+         * @param   target_rate     target rate
+         */
+        public void runRate(double target_rate) {
+            updateSnapshot();
+            updateRate(target_rate);
+        }
+
+        /**
+         * Runs one voltage control cycle
+         * @param   voltage     target voltage
+         */
+        public void runVoltage(double voltage) {
+            updateSnapshot();
+            updateVoltage(voltage);
+        }
+
+        /**
+         * Performs the controller handoff a command does when it starts
+         */
+        public void runHandoff() {
+            updateSnapshot();
+            handoff();
+        }
+    }
+
+    public static double sink;          /**< Result sink to prevent dead code elimination */
+    private static int counter = 0;     /**< Input counter to vary benchmark inputs */
+
+    private static final ArrayList<Benchmark.Result> results = new ArrayList<>();
+    private static boolean failed = false;
+
+    /**
+     * Main method
+     * @param   args    unused
+     */
+    public static void main(String[] args) {
+        HAL.initialize(500, 0);
+
+        Benchmark bench = new Benchmark();
+
+        benchControllers(bench);
+        benchKinematics(bench);
+        benchMechanism(bench);
+        benchButtons(bench);
+        benchBatterySag();
+        benchHandoff();
+        benchSimulation(bench);
+        benchSync();
+        benchPlanner(bench);
+
+        System.out.println(String.format("%-48s %25s %15s", "Benchmark", "Score", "Alloc"));
+        for(var result : results) System.out.println(result);
+
+        System.exit(failed ? 1 : 0);
+    }
+
+    /**
+     * Records a benchmark result
+     * @param   result          benchmark result
+     * @param   zero_alloc      true if the benchmark is required to be allocation free
+     */
+    private static void record(Benchmark.Result result, boolean zero_alloc) {
+        results.add(result);
+
+        if(zero_alloc && result.bytes_per_op > 0) {
+            System.out.println("FAILED: " + result.name + " allocated " + result.bytes_per_op + " B/op");
+            failed = true;
+        }
+    }
+
+    /**
+     * Benchmarks the position and rate controllers
+     * @param   bench   benchmark runner
+     */
+    private static void benchControllers(Benchmark bench) {
+        PositionController pos_ctrl = new PositionController(
+            new PositionController.Settings(10, 10, 5)
+        );
+
+        record(bench.run("PositionController.update", () -> {
+            sink = pos_ctrl.update((counter++ & 1023) * 1e-3, 0.5, 1.0);
+        }), true);
+
+        FFParam[] ff_params = {
+            FFParam.simpleMotor(0.1, 2.0, 0.1),
+            FFParam.arm(0.1, 2.0, 0.5, 0.1),
+            FFParam.elevator(0.1, 2.0, 0.5, 0.1)
+        };
+
+        for(var ff : ff_params) {
+            RateController rate_ctrl = new RateController(
+                new RateController.Settings(ff, new PIDParam(1, 0, 0))
+            );
+
+            record(bench.run("RateController.update " + ff.type, () -> {
+                sink = rate_ctrl.update(0.5, (counter++ & 1023) * 1e-3, 1.0);
+            }), false);
+        }
+
+        LoopProfiler.Probe probe = LoopProfiler.getInstance().register("Bench probe");
+
+        record(bench.run("LoopProfiler.Probe start/stop", () -> {
+            probe.start();
+            probe.stop();
+        }), true);
+
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        record(bench.run("LatencyHistogram.record", () -> {
+            histogram.record((counter++ & 1023) * 997L);
+        }), true);
+
+        GainSchedule schedule = new GainSchedule(-1, 1, 5, 0, 2, 3);
+        for(int i = 0; i < 5; i++) {
+            for(int j = 0; j < 3; j++) {
+                schedule.set(i, j, new PIDParam(1 + j, 0.1, 0), FFParam.arm(0.1, 2.0, 0.5 + 0.2 * j, 0.1));
+            }
+        }
+
+        double[] gains = new double[GainSchedule.GAIN_COUNT];
+
+        record(bench.run("GainSchedule.lookup", () -> {
+            schedule.lookup((counter++ & 1023) * 2e-3 - 1, 0.7, gains);
+            sink = gains[GainSchedule.KV];
+        }), true);
+
+        FFEstimator estimator = new FFEstimator(FFParam.arm(0.1, 2.0, 0.5, 0.1));
+
+        record(bench.run("FFEstimator.update", () -> {
+            double rate = (counter++ & 1023) * 1e-3;
+            estimator.update(0.1 + 2.0 * rate, rate, 0.5, 0.25);
+            sink = estimator.getKV();
+        }), true);
+    }
+
+    /**
+     * Benchmarks the swerve drive kinematics update
+     * @param   bench   benchmark runner
+     */
+    private static void benchKinematics(Benchmark bench) {
+        PositionController.Settings angle_pos = new PositionController.Settings(
+            1000, 1000, 720, true, new Limits(-180, 180)
+        );
+        RateController.Settings angle_rate = new RateController.Settings(
+            FFParam.simpleMotor(0.1, 0.01), new PIDParam(0.01, 0, 0)
+        );
+        RateController.Settings drive_rate = new RateController.Settings(
+            FFParam.simpleMotor(0.1, 2.0), new PIDParam(0.1, 0, 0)
+        );
+
+        Translation2d[] translations = {
+            new Translation2d(0.3, 0.3),
+            new Translation2d(0.3, -0.3),
+            new Translation2d(-0.3, 0.3),
+            new Translation2d(-0.3, -0.3)
+        };
+
+        SwerveModuleBase[] modules = new SwerveModuleBase[translations.length];
+
+        for(int i = 0; i < modules.length; i++) {
+            modules[i] = new BenchSwerveDrive.Module(new SwerveModuleBase.Settings(
+                "Module " + i, translations[i], 6.75, 0.05, angle_pos, angle_rate, drive_rate
+            ));
+        }
+
+        BenchSwerveDrive drive = new BenchSwerveDrive(
+            new SwerveDriveBase.Settings(4.5, 2 * Math.PI, 720, 720), 
+            modules
+        );
+
+        drive.setFieldRelative(true);
+
+        record(bench.run("SwerveDriveBase.updateKinematics", () -> {
+            drive.runKinematics(1.0, (counter++ & 1023) * 1e-3, 0.5);
+        }), true);
+
+        drive.setAccelLimits(6, 9, 4 * Math.PI);
+        drive.setCenterOfGravityHeight(0.4);
+
+        record(bench.run("SwerveDriveBase.updateKinematics accel limited", () -> {
+            double sign = (counter++ & 64) == 0 ? 1 : -1;
+            drive.runKinematics(4.0 * sign, 1.0, 0.5 * sign);
+        }), true);
+
+        drive.setAccelLimits(0, 0, 0);
+        drive.setCenterOfGravityHeight(0);
+    }
+
+    /**
+     * Benchmarks the motor mechanism periodic update
+     * @param   bench   benchmark runner
+     */
+    private static void benchMechanism(Benchmark bench) {
+        MotorMechanismBase.Settings settings = new MotorMechanismBase.Settings(
+            "Bench Mechanism", 
+            "Bench",
+            new PositionController.Settings(10, 10, 5),
+            new RateController.Settings[] {
+                new RateController.Settings(FFParam.elevator(0.1, 2.0, 0.5), new PIDParam(1, 0, 0))
+            },
+            new Limits[] { new Limits(-100, 100) },
+            new Limits(-0.01, 0.01)
+        );
+
+        SimBench mechanism = new SimBench(settings, FFParam.elevator(0.1, 2.0, 0.5, 0.1), null);
+
+        record(bench.run("MotorMechanismBase.periodic", () -> {
+            mechanism.step();
+            mechanism.periodic();
+        }), true);
+    }
+
+    /**
+     * Compares rate tracking with and without battery voltage compensation on a simulated 
+     * flywheel with a duty cycle motor output. The bus voltage sags through the battery 
+     * resistance with the flywheel current plus a background load that ramps up to 150 amps and 
+     * back down. Fails if compensation does not reduce the tracking error.
+     */
+    private static void benchBatterySag() {
+        final double dt = 0.02;
+        final int steps = 500;
+        final double open_circuit_voltage = 12.5;
+        final double battery_resistance = 0.02;
+        final double max_background_current = 150;
+
+        FFParam plant = FFParam.simpleMotor(0.2, 2.0, 0.1);
+        RateController.Settings[] settings = {
+            new RateController.Settings(plant, new PIDParam(0.5, 0, 0)),
+            new RateController.Settings(plant, new PIDParam(0.5, 0, 0), 12)
+        };
+        String[] names = {"uncompensated", "compensated"};
+
+        MotorMechanismBase.Settings mech_settings = new MotorMechanismBase.Settings(
+            "Sag Mechanism", 
+            "Bench",
+            new PositionController.Settings(10, 10, 5),
+            new RateController.Settings[] { settings[0] },
+            new Limits[] { new Limits(-1000, 1000) },
+            new Limits(-0.01, 0.01)
+        );
+
+        BatteryMonitor battery = BatteryMonitor.getInstance();
+        battery.setPeriod(dt);
+
+        double[] rms_error = new double[settings.length];
+
+        System.out.println("Battery sag tracking error (target 4 units/s, 0 -> 150 A -> 0 background load)");
+
+        for(int i = 0; i < settings.length; i++) {
+            RateController rate_ctrl = new RateController(settings[i]);
+            SimBench mechanism = new SimBench(mech_settings, plant, null);
+            mechanism.setDutyCycleOutput(12);
+
+            double sq_error = 0;
+            double max_error = 0;
+            double min_voltage = open_circuit_voltage;
+
+            for(int step = 0; step < steps; step++) {
+                // Ramp the background load up over the first half and down over the second half
+                double t = (double)step / steps;
+                double load_current = max_background_current * (1 - Math.abs(2 * t - 1));
+                double bus_current = load_current + Math.abs(mechanism.getMotorCurrent(0));
+                double bus_voltage = open_circuit_voltage - battery_resistance * bus_current;
+                min_voltage = Math.min(min_voltage, bus_voltage);
+
+                battery.sample(bus_voltage);
+                mechanism.setBusVoltage(bus_voltage);
+
+                double target_rate = 4;
+                double rate = mechanism.getRate();
+
+                mechanism.setMotorVoltage(rate_ctrl.update(0, rate, target_rate));
+                mechanism.step(dt);
+
+                // Skip the initial spin up
+                if(step < 25) continue;
+
+                double error = Math.abs(target_rate - mechanism.getRate());
+                sq_error += error * error;
+                max_error = Math.max(max_error, error);
+            }
+
+            rms_error[i] = Math.sqrt(sq_error / (steps - 25));
+
+            System.out.println(String.format("  %-16s rms %.4f  max %.4f  min bus %.2f V", 
+                names[i], rms_error[i], max_error, min_voltage));
+        }
+
+        if(rms_error[1] >= rms_error[0]) {
+            System.out.println("FAILED: compensated rms error " + rms_error[1] + " is not below uncompensated " + rms_error[0]);
+            failed = true;
+        }
+    }
+
+    /**
+     * Measures the transient caused by switching rate controllers and switching from voltage 
+     * control to position hold on a simulated elevator and arm, with and without the 
+     * controller handoff
+     */
+    private static void benchHandoff() {
+        System.out.println("Controller switch transients (output kick V, max position deviation)");
+
+        String[] mechanisms = {"elevator", "arm"};
+        String[] scenarios = {"rate ctrl switch", "voltage -> hold"};
+
+        for(int m = 0; m < mechanisms.length; m++) {
+            for(int sc = 0; sc < scenarios.length; sc++) {
+                double[] stale = runHandoff(m == 1, sc, false);
+                double[] seeded = runHandoff(m == 1, sc, true);
+
+                System.out.println(String.format("  %-8s %-18s stale %.3f V %.4f   handoff %.3f V %.4f", 
+                    mechanisms[m], scenarios[sc], stale[0], stale[1], seeded[0], seeded[1]));
+            }
+        }
+    }
+
+    /**
+     * Runs one controller switch scenario
+     * @param   is_arm      simulate an arm if true, an elevator otherwise
+     * @param   scenario    0 to switch rate controllers while holding, 1 to switch from voltage 
+     *                          control to holding
+     * @param   handoff     perform the controller handoff if true
+     * @return  output kick at the switch in volts and maximum position deviation afterwards
+     */
+    private static double[] runHandoff(boolean is_arm, int scenario, boolean handoff) {
+        final double dt = 0.02;
+        final double plant_kG = 1.0;
+        final double hold_pos = 0.3;
+
+        FFParam ff_light = is_arm ? FFParam.arm(0, 2.0, 0.8, 0.1) : FFParam.elevator(0, 2.0, 0.8, 0.1);
+        FFParam ff_heavy = is_arm ? FFParam.arm(0, 2.0, 1.2, 0.1) : FFParam.elevator(0, 2.0, 1.2, 0.1);
+
+        FFParam plant = is_arm ? FFParam.arm(0, 2.0, plant_kG, 0.1) : FFParam.elevator(0, 2.0, plant_kG, 0.1);
+
+        MotorMechanismBase.Settings settings = new MotorMechanismBase.Settings(
+            "Handoff Mechanism", 
+            "Bench",
+            new PositionController.Settings(10, 10, 5),
+            new RateController.Settings[] {
+                new RateController.Settings(ff_light, new PIDParam(1, 2, 0)),
+                new RateController.Settings(ff_heavy, new PIDParam(2, 4, 0))
+            },
+            new Limits[] { new Limits(-100, 100) },
+            new Limits(-0.01, 0.01)
+        );
+
+        SimBench mechanism = new SimBench(settings, plant, null);
+        mechanism.setState(hold_pos, 0);
+
+        // Settle before the switch
+        double hold_voltage = plant_kG * (is_arm ? Math.cos(hold_pos) : 1);
+
+        for(int i = 0; i < 200; i++) {
+            if(scenario == 0) {
+                mechanism.runPosition(hold_pos);
+            } else {
+                mechanism.runVoltage(hold_voltage);
+            }
+
+            mechanism.step(dt);
+        }
+
+        double switch_pos = mechanism.getPosition();
+        double prev_voltage = mechanism.getMotorVoltage(0);
+
+        // Switch
+        if(scenario == 0) {
+            if(handoff) {
+                mechanism.setRateCtrlIndex(1);
+            } else {
+                mechanism.cur_rate_ctrl = 1;
+            }
+        } else {
+            mechanism.pos_ctrl.reset();
+            if(handoff) mechanism.runHandoff();
+        }
+
+        double kick = 0;
+        double max_dev = 0;
+
+        for(int i = 0; i < 50; i++) {
+            mechanism.runPosition(switch_pos);
+
+            if(i == 0) kick = Math.abs(mechanism.getMotorVoltage(0) - prev_voltage);
+
+            mechanism.step(dt);
+
+            max_dev = Math.max(max_dev, Math.abs(mechanism.getPosition() - switch_pos));
+        }
+
+        return new double[] {kick, max_dev};
+    }
+
+    /**
+     * Benchmarks the simulation step and compares settle time of the trapezoid and S-curve 
+     * profiles on a simulated elevator. Fails if either profile takes more than 10% longer to 
+     * settle than its planned profile time or if the S-curve overshoots the trapezoid by more 
+     * than the position tolerance.
+     * @param   bench   benchmark runner
+     */
+    private static void benchSimulation(Benchmark bench) {
+        FFParam plant = FFParam.elevator(0.2, 2.0, 0.6, 0.2);
+        RateController.Settings rate_ctrl = new RateController.Settings(plant, new PIDParam(2, 0, 0));
+        Limits hard_limits = new Limits(0, 1.5);
+
+        PositionController.Settings[] profiles = {
+            new PositionController.Settings(4, 4, 1.5),
+            new PositionController.Settings(4, 4, 1.5, 40)
+        };
+        String[] names = {"trapezoid", "s-curve"};
+
+        double[] overshoots = new double[profiles.length];
+
+        System.out.println("Simulated elevator 0 -> 1.0 settle time (tolerance 0.005)");
+
+        for(int i = 0; i < profiles.length; i++) {
+            MotorMechanismBase.Settings settings = new MotorMechanismBase.Settings(
+                "Sim Elevator", 
+                "Bench",
+                profiles[i],
+                new RateController.Settings[] { rate_ctrl },
+                new Limits[] { new Limits(0, 1.5) },
+                new Limits(-0.005, 0.005)
+            );
+
+            SimBench mechanism = new SimBench(settings, plant, hard_limits);
+
+            final double target = 1.0;
+            double settle_time = 0;
+            double overshoot = 0;
+            long start = System.nanoTime();
+
+            while(mechanism.getSimTime() < 5) {
+                mechanism.runPosition(target);
+                mechanism.step(0.02);
+
+                double error = mechanism.getPosition() - target;
+                overshoot = Math.max(overshoot, error);
+                if(Math.abs(error) > 0.005) settle_time = mechanism.getSimTime();
+            }
+
+            double wall = (System.nanoTime() - start) * 1e-9;
+            double profile_time = mechanism.pos_ctrl.getProfileTime(0, target);
+            overshoots[i] = overshoot;
+
+            System.out.println(String.format("  %-10s settle %.3f s (planned %.3f s)  overshoot %.4f  %.0fx real time", 
+                names[i], settle_time, profile_time, overshoot, mechanism.getSimTime() / wall));
+
+            if(settle_time > 1.1 * profile_time) {
+                System.out.println("FAILED: " + names[i] + " settled in " + settle_time + " s, planned " + profile_time + " s");
+                failed = true;
+            }
+
+            if(i == 0) {
+                record(bench.run("SimMotorMechanism.step", () -> {
+                    mechanism.step();
+                }), true);
+            }
+        }
+
+        if(overshoots[1] > overshoots[0] + 0.005) {
+            System.out.println("FAILED: s-curve overshoot " + overshoots[1] + " exceeds trapezoid overshoot " + overshoots[0]);
+            failed = true;
+        }
+    }
+
+    /**
+     * Checks that a coordinated move of two simulated elevators with different profiles and 
+     * distances arrives on both axes at the same time. Fails if the arrival times differ by more 
+     * than 15% of the move time.
+     */
+    private static void benchSync() {
+        FFParam plant = FFParam.elevator(0.2, 2.0, 0.6, 0.2);
+        RateController.Settings rate_ctrl = new RateController.Settings(plant, new PIDParam(2, 0, 0));
+        Limits hard_limits = new Limits(0, 1.5);
+
+        PositionController.Settings[] profiles = {
+            new PositionController.Settings(4, 4, 1.5),
+            new PositionController.Settings(8, 6, 3)
+        };
+        double[] targets = {1.0, 0.5};
+
+        SimBench[] axes = new SimBench[profiles.length];
+
+        for(int i = 0; i < axes.length; i++) {
+            MotorMechanismBase.Settings settings = new MotorMechanismBase.Settings(
+                "Sync Axis " + i, 
+                "Bench",
+                profiles[i],
+                new RateController.Settings[] { rate_ctrl },
+                new Limits[] { new Limits(0, 1.5) },
+                new Limits(-0.005, 0.005)
+            );
+
+            axes[i] = new SimBench(settings, plant, hard_limits);
+        }
+
+        MechanismCoordinator coordinator = new MechanismCoordinator(axes);
+        double[] arrival = new double[axes.length];
+
+        coordinator.begin(targets);
+
+        while(axes[0].getSimTime() < 5) {
+            for(int i = 0; i < axes.length; i++) axes[i].updateSnapshot();
+            coordinator.update();
+
+            for(int i = 0; i < axes.length; i++) {
+                axes[i].step(0.02);
+                if(Math.abs(axes[i].getPosition() - targets[i]) > 0.005) arrival[i] = axes[i].getSimTime();
+            }
+        }
+
+        coordinator.finish();
+
+        double spread = Math.abs(arrival[0] - arrival[1]);
+        double move_time = Math.max(arrival[0], arrival[1]);
+
+        System.out.println(String.format("Coordinated move arrival (planned %.3f s)  axis 0 %.3f s  axis 1 %.3f s", 
+            coordinator.getMoveTime(), arrival[0], arrival[1]));
+
+        if(spread > 0.15 * move_time) {
+            System.out.println("FAILED: coordinated axes arrived " + spread + " s apart");
+            failed = true;
+        }
+    }
+
+    /**
+     * Benchmarks superstructure planning on a two axis grid with a wall between the start and 
+     * goal, with and without the path cache
+     * @param   bench   benchmark runner
+     */
+    private static void benchPlanner(Benchmark bench) {
+        MotorMechanismBase[] axes = new MotorMechanismBase[2];
+
+        for(int i = 0; i < axes.length; i++) {
+            MotorMechanismBase.Settings settings = new MotorMechanismBase.Settings(
+                "Planner Axis " + i, 
+                "Bench",
+                new PositionController.Settings(10, 10, 1 + i),
+                new RateController.Settings[] {
+                    new RateController.Settings(FFParam.simpleMotor(0, 2.0), new PIDParam(1, 0, 0))
+                },
+                new Limits[] { new Limits(0, 1) },
+                new Limits(-0.01, 0.01)
+            );
+
+            axes[i] = new SimBench(settings, FFParam.simpleMotor(0, 2.0, 0.1), null);
+        }
+
+        CSpaceGrid grid = new CSpaceGrid(
+            new Limits[] { new Limits(0, 1), new Limits(0, 1) }, 
+            new int[] { 100, 100 }
+        );
+
+        // Wall across the middle of the first axis with a gap near the top of the second axis
+        grid.build(config -> config[0] > 0.45 && config[0] < 0.55 && config[1] < 0.8);
+
+        SuperstructurePlanner planner = new SuperstructurePlanner(grid, new MechanismCoordinator(axes));
+
+        double[] start = {0.1, 0.1};
+        double[] goal = {0.9, 0.1};
+
+        record(bench.run("SuperstructurePlanner.plan search", () -> {
+            planner.clearCache();
+            sink = planner.plan(start, goal).length;
+        }), false);
+
+        record(bench.run("SuperstructurePlanner.plan cached", () -> {
+            sink = planner.plan(start, goal).length;
+        }), true);
+    }
+
+    /**
+     * Benchmarks the button groups
+     * @param   bench   benchmark runner
+     */
+    private static void benchButtons(Benchmark bench) {
+        BenchButton[] buttons = new BenchButton[4];
+        for(int i = 0; i < buttons.length; i++) buttons[i] = new BenchButton();
+
+        ButtonAndGroup and_group = new ButtonAndGroup(buttons);
+        ButtonOrGroup or_group = new ButtonOrGroup(buttons);
+        ButtonAndGroup nested_group = new ButtonAndGroup(
+            new ButtonOrGroup(buttons[0], buttons[1]),
+            new ButtonOrGroup(buttons[2], buttons[3])
+        );
+
+        record(bench.run("ButtonAndGroup.pressed", () -> {
+            buttons[counter++ & 3].state ^= true;
+            sink = and_group.pressed() ? 1 : 0;
+        }), true);
+
+        record(bench.run("ButtonOrGroup.pressed", () -> {
+            buttons[counter++ & 3].state ^= true;
+            sink = or_group.pressed() ? 1 : 0;
+        }), true);
+
+        record(bench.run("ButtonAndGroup.pressed nested", () -> {
+            buttons[counter++ & 3].state ^= true;
+            sink = nested_group.pressed() ? 1 : 0;
+        }), true);
+
+        record(bench.run("InputService.periodic", () -> {
+            buttons[counter++ & 3].state ^= true;
+            InputService.getInstance().periodic();
+            sink = nested_group.risingEdge() ? 1 : 0;
+        }), false);
+
+        // Operator panel sized program: 16 inputs and 64 composite bindings sharing sub-groups
+        BenchButton[] inputs = new BenchButton[16];
+        for(int i = 0; i < inputs.length; i++) inputs[i] = new BenchButton();
+
+        ArrayList<ButtonBase> bindings = new ArrayList<>();
+        ButtonOrGroup[] shared = new ButtonOrGroup[8];
+        for(int i = 0; i < shared.length; i++) shared[i] = new ButtonOrGroup(inputs[2 * i], inputs[2 * i + 1]);
+
+        for(int i = 0; i < 64; i++) {
+            if((i & 1) == 0) {
+                bindings.add(new ButtonAndGroup(inputs[i & 15], shared[(i >> 1) & 7]));
+            } else {
+                bindings.add(new ButtonOrGroup(
+                    new ButtonAndGroup(inputs[i & 15], inputs[(i + 5) & 15]), 
+                    shared[(i >> 2) & 7]
+                ));
+            }
+        }
+
+        ButtonProgram program = new ButtonProgram();
+        program.compile(bindings);
+
+        record(bench.run("ButtonProgram.evaluate 64 bindings", () -> {
+            inputs[counter++ & 15].state ^= true;
+            program.evaluate();
+            sink = program.size();
+        }), true);
+
+        // Driver axis shaping at the 50Hz loop period
+        AxisShaper expo_shaper = new AxisShaper(new Joystick(0), 0);
+        expo_shaper.setDeadband(0.05);
+        expo_shaper.setExpo(0.6);
+        expo_shaper.setRateLimit(3, 6);
+
+        AxisShaper curve_shaper = new AxisShaper(new Joystick(0), 1);
+        curve_shaper.setDeadband(0.05);
+        curve_shaper.setCurve(0, 0.05, 0.15, 0.35, 0.6, 1);
+        curve_shaper.setRateLimit(3);
+
+        record(bench.run("AxisShaper.calculate expo", () -> {
+            double input = ((counter++ & 63) - 32) / 32.0;
+            sink = expo_shaper.calculate(input, 0.02);
+        }), true);
+
+        record(bench.run("AxisShaper.calculate curve", () -> {
+            double input = ((counter++ & 63) - 32) / 32.0;
+            sink = curve_shaper.calculate(input, 0.02);
+        }), true);
+    }
+}
@@ -0,0 +1,250 @@
+/**
+ * Copyright 2024 Ryan Fitz-Gerald
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to 
+ * deal in the Software without restriction, including without limitation the 
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or 
+ * sell copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING 
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER 
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package frc.lib2960.controllers;
+
+import frc.lib2960.util.FFParam;
+
+/**
+ * Online recursive least squares estimator for feedforward gains. Fits the model
+ * 
+ *      V = kS * sign(v) + kV * v + kA * a + kG * g(x)
+ * 
+ * where g(x) is 1 for elevators, cos(x) for arms, and unused for simple motors. Each sample is 
+ * O(1) in time and memory and does not allocate.
+ */
+public class FFEstimator {
+    public static final int KS = 0;    /**< Static gain index */
+    public static final int KV = 1;    /**< Velocity gain index */
+    public static final int KA = 2;    /**< Acceleration gain index */
+    public static final int KG = 3;    /**< Gravity gain index */
+
+    private final FFParam.FFType type;  /**< Feedforward model type */
+    private final int n;                /**< Number of estimated gains */
+    private final double forgetting;    /**< Forgetting factor. 1 for no forgetting. */
+    private final double init_cov;      /**< Initial covariance diagonal */
+    private final double max_cov;       /**< Covariance trace limit to prevent windup */
+
+    private final double[] theta;       /**< Gain estimates */
+    private final double[][] cov;       /**< Estimate covariance */
+    private final double[] phi;         /**< Regressor buffer */
+    private final double[] gain;        /**< Update gain buffer */
+    private final double[] p_phi;       /**< Covariance times regressor buffer */
+
+    private double prev_time;           /**< Previous sample timestamp */
+    private double prev_pos;            /**< Previous sample position */
+    private double prev_rate;           /**< Previous sample rate */
+    private double prev_voltage;        /**< Voltage applied since previous sample */
+    private boolean has_prev = false;   /**< True if a previous sample is available */
+
+    private double error = 0;           /**< Most recent prediction error */
+    private long sample_count = 0;      /**< Number of samples used in the estimate */
+
+    /**
+     * Constructor
+     *      - forgetting is set to 0.995
+     *      - init_cov is set to 1000
+     * @param   param   Initial feedforward gains
+     */
+    public FFEstimator(FFParam param) {
+        this(param, 0.995, 1000);
+    }
+
+    /**
+     * Constructor
+     * @param   param       Initial feedforward gains
+     * @param   forgetting  Forgetting factor between 0 and 1. Lower values track changes faster.
+     * @param   init_cov    Initial covariance. Higher values trust the initial gains less.
+     */
+    public FFEstimator(FFParam param, double forgetting, double init_cov) {
+        this.type = param.type;
+        this.n = param.type == FFParam.FFType.SIMPLE ? 3 : 4;
+        this.forgetting = forgetting;
+        this.init_cov = init_cov;
+        this.max_cov = init_cov * n * 10;
+
+        theta = new double[4];
+        cov = new double[4][4];
+        phi = new double[4];
+        gain = new double[4];
+        p_phi = new double[4];
+
+        reset(param);
+    }
+
+    /**
+     * Resets the estimate to a set of gains
+     * @param   param   feedforward gains
+     */
+    public void reset(FFParam param) {
+        theta[KS] = param.kS;
+        theta[KV] = param.kV;
+        theta[KA] = param.kA;
+        theta[KG] = param.kG;
+
+        for(int i = 0; i < 4; i++) {
+            for(int j = 0; j < 4; j++) cov[i][j] = i == j ? init_cov : 0;
+        }
+
+        has_prev = false;
+        error = 0;
+        sample_count = 0;
+    }
+
+    /**
+     * Adds a sample. The acceleration is derived from the change in rate since the previous 
+     * sample and regressed against the voltage applied over that interval.
+     * @param   timestamp   sample timestamp in seconds
+     * @param   pos         current mechanism position
+     * @param   rate        current mechanism rate
+     * @param   voltage     voltage applied from this sample until the next one
+     */
+    public void addSample(double timestamp, double pos, double rate, double voltage) {
+        if(has_prev) {
+            double dt = timestamp - prev_time;
+
+            if(dt > 0) {
+                double accel = (rate - prev_rate) / dt;
+                double avg_rate = (rate + prev_rate) / 2;
+
+                update(prev_voltage, avg_rate, accel, prev_pos);
+            }
+        }
+
+        prev_time = timestamp;
+        prev_pos = pos;
+        prev_rate = rate;
+        prev_voltage = voltage;
+        has_prev = true;
+    }
+
+    /**
+     * Drops the previous sample. Call for cycles the model does not describe, such as when the 
+     * mechanism is held against a limit, so the next sample does not regress across them.
+     */
+    public void skipSample() {
+        has_prev = false;
+    }
+
+    /**
+     * Runs one recursive least squares update
+     * @param   voltage     applied voltage
+     * @param   rate        mechanism rate
+     * @param   accel       mechanism acceleration
+     * @param   pos         mechanism position
+     */
+    public void update(double voltage, double rate, double accel, double pos) {
+        phi[KS] = Math.signum(rate);
+        phi[KV] = rate;
+        phi[KA] = accel;
+        phi[KG] = type == FFParam.FFType.ARM ? Math.cos(pos) : 1;
+
+        // Prediction error
+        double predict = 0;
+        for(int i = 0; i < n; i++) predict += phi[i] * theta[i];
+        error = voltage - predict;
+
+        // Gain vector
+        double denom = forgetting;
+        for(int i = 0; i < n; i++) {
+            double sum = 0;
+            for(int j = 0; j < n; j++) sum += cov[i][j] * phi[j];
+            p_phi[i] = sum;
+            denom += phi[i] * sum;
+        }
+
+        for(int i = 0; i < n; i++) gain[i] = p_phi[i] / denom;
+
+        // Update estimate
+        for(int i = 0; i < n; i++) theta[i] += gain[i] * error;
+
+        // Update covariance. Forgetting is skipped when the trace is large to prevent windup 
+        // during periods of poor excitation.
+        double trace = 0;
+        for(int i = 0; i < n; i++) trace += cov[i][i];
+        double scale = trace < max_cov ? 1 / forgetting : 1;
+
+        for(int i = 0; i < n; i++) {
+            for(int j = 0; j < n; j++) cov[i][j] = (cov[i][j] - gain[i] * p_phi[j]) * scale;
+        }
+
+        sample_count++;
+    }
+
+    /**
+     * Gets an estimated gain
+     * @param   index   gain index. One of KS, KV, KA, or KG.
+     * @return  estimated gain
+     */
+    public double getGain(int index) {
+        return theta[index];
+    }
+
+    /**
+     * Gets the estimated static gain
+     * @return  estimated static gain in Volts
+     */
+    public double getKS() {
+        return theta[KS];
+    }
+
+    /**
+     * Gets the estimated velocity gain
+     * @return  estimated velocity gain in Volts * seconds / distance
+     */
+    public double getKV() {
+        return theta[KV];
+    }
+
+    /**
+     * Gets the estimated acceleration gain
+     * @return  estimated acceleration gain in Volts * seconds ^ 2 / distance
+     */
+    public double getKA() {
+        return theta[KA];
+    }
+
+    /**
+     * Gets the estimated gravity gain. Always 0 for simple motors.
+     * @return  estimated gravity gain in Volts
+     */
+    public double getKG() {
+        return n > KG ? theta[KG] : 0;
+    }
+
+    /**
+     * Gets the most recent prediction error
+     * @return  most recent prediction error in Volts
+     */
+    public double getError() {
+        return error;
+    }
+
+    /**
+     * Gets the number of samples used in the estimate
+     * @return  number of samples used in the estimate
+     */
+    public long getSampleCount() {
+        return sample_count;
+    }
+}
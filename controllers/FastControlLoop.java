@@ -0,0 +1,163 @@
+/**
+ * Copyright 2024 Ryan Fitz-Gerald
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to 
+ * deal in the Software without restriction, including without limitation the 
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or 
+ * sell copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING 
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER 
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package frc.lib2960.controllers;
+
+import edu.wpi.first.wpilibj.Notifier;
+
+/**
+ * Runs a control update on a dedicated periodic thread independent of the command scheduler. 
+ * Tracks the timing jitter of each cycle and counts overruns where the update took longer than 
+ * the loop period.
+ */
+public class FastControlLoop implements AutoCloseable {
+    public final String name;               /**< Loop name */
+    public final double period;             /**< Loop period in seconds */
+
+    private final Runnable update;          /**< Control update method */
+    private final Notifier notifier;        /**< Loop thread */
+
+    private long last_start = 0;            /**< Start time of the previous cycle in nanoseconds */
+
+    // Statistics. Written by the loop thread only.
+    private volatile long cycle_count = 0;      /**< Number of completed cycles */
+    private volatile long overrun_count = 0;    /**< Number of cycles longer than the period */
+    private volatile double max_jitter = 0;     /**< Maximum period error in seconds */
+    private volatile double mean_jitter = 0;    /**< Mean absolute period error in seconds */
+    private volatile double max_exec_time = 0;  /**< Maximum update execution time in seconds */
+
+    /**
+     * Constructor
+     * @param   name    Loop name
+     * @param   update  Control update method
+     * @param   period  Loop period in seconds
+     */
+    public FastControlLoop(String name, Runnable update, double period) {
+        this.name = name;
+        this.update = update;
+        this.period = period;
+
+        notifier = new Notifier(this::run);
+        notifier.setName(name);
+    }
+
+    /**
+     * Starts the loop
+     */
+    public void start() {
+        last_start = 0;
+        notifier.startPeriodic(period);
+    }
+
+    /**
+     * Stops the loop
+     */
+    public void stop() {
+        notifier.stop();
+    }
+
+    /**
+     * Stops the loop and releases its thread. The loop can not be restarted.
+     */
+    @Override
+    public void close() {
+        notifier.stop();
+        notifier.close();
+    }
+
+    /**
+     * Resets the loop statistics. Only call while the loop is stopped.
+     */
+    public void resetStats() {
+        cycle_count = 0;
+        overrun_count = 0;
+        max_jitter = 0;
+        mean_jitter = 0;
+        max_exec_time = 0;
+    }
+
+    /**
+     * Gets the number of completed cycles
+     * @return  number of completed cycles
+     */
+    public long getCycleCount() {
+        return cycle_count;
+    }
+
+    /**
+     * Gets the number of cycles where the update took longer than the period
+     * @return  number of overruns
+     */
+    public long getOverrunCount() {
+        return overrun_count;
+    }
+
+    /**
+     * Gets the maximum difference between the actual and expected loop period
+     * @return  maximum jitter in seconds
+     */
+    public double getMaxJitter() {
+        return max_jitter;
+    }
+
+    /**
+     * Gets the mean absolute difference between the actual and expected loop period
+     * @return  mean jitter in seconds
+     */
+    public double getMeanJitter() {
+        return mean_jitter;
+    }
+
+    /**
+     * Gets the maximum update execution time
+     * @return  maximum execution time in seconds
+     */
+    public double getMaxExecTime() {
+        return max_exec_time;
+    }
+
+    /**
+     * Runs one loop cycle and updates the statistics. Called by the loop thread.
+     */
+    private void run() {
+        long start = System.nanoTime();
+
+        update.run();
+
+        long end = System.nanoTime();
+        long count = cycle_count;
+        double exec_time = (end - start) * 1e-9;
+
+        if(exec_time > period) overrun_count = overrun_count + 1;
+        if(exec_time > max_exec_time) max_exec_time = exec_time;
+
+        if(last_start != 0) {
+            double jitter = Math.abs((start - last_start) * 1e-9 - period);
+
+            if(jitter > max_jitter) max_jitter = jitter;
+            mean_jitter = mean_jitter + (jitter - mean_jitter) / (count + 1);
+        }
+
+        last_start = start;
+        cycle_count = count + 1;
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright 2024 Ryan Fitz-Gerald
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to 
+ * deal in the Software without restriction, including without limitation the 
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or 
+ * sell copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING 
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER 
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package frc.lib2960.controllers;
+
+import frc.lib2960.util.FFParam;
+import frc.lib2960.util.PIDParam;
+
+/**
+ * Rate controller gain schedule keyed on mechanism position and optionally a load parameter. 
+ * Gains are stored in a uniformly spaced primitive grid so a lookup is a constant number of 
+ * operations and does not allocate. Values between grid points are bilinearly interpolated and 
+ * values outside the grid are clamped to the edge.
+ */
+public class GainSchedule {
+    public static final int KP = 0;         /**< Proportional gain index */
+    public static final int KI = 1;         /**< Integral gain index */
+    public static final int KD = 2;         /**< Derivative gain index */
+    public static final int KS = 3;         /**< Static gain index */
+    public static final int KV = 4;         /**< Velocity gain index */
+    public static final int KG = 5;         /**< Gravity gain index */
+    public static final int KA = 6;         /**< Acceleration gain index */
+    public static final int GAIN_COUNT = 7; /**< Number of gains per grid point */
+
+    private final double min_pos;       /**< Position of the first grid column */
+    private final double pos_step;      /**< Position spacing between grid columns */
+    private final int pos_points;       /**< Number of grid columns */
+
+    private final double min_load;      /**< Load of the first grid row */
+    private final double load_step;     /**< Load spacing between grid rows */
+    private final int load_points;      /**< Number of grid rows */
+
+    private final double[] grid;        /**< Gain grid. Indexed [load][pos][gain]. */
+
+    /**
+     * Constructor. Schedule on position only.
+     * @param   min_pos     Position of the first grid point
+     * @param   max_pos     Position of the last grid point
+     * @param   pos_points  Number of position grid points
+     */
+    public GainSchedule(double min_pos, double max_pos, int pos_points) {
+        this(min_pos, max_pos, pos_points, 0, 0, 1);
+    }
+
+    /**
+     * Constructor. Schedule on position and load.
+     * @param   min_pos     Position of the first grid point
+     * @param   max_pos     Position of the last grid point
+     * @param   pos_points  Number of position grid points. 1 to schedule on load only.
+     * @param   min_load    Load of the first grid point
+     * @param   max_load    Load of the last grid point
+     * @param   load_points Number of load grid points. 1 to schedule on position only.
+     */
+    public GainSchedule(double min_pos, double max_pos, int pos_points, 
+                        double min_load, double max_load, int load_points) {
+        this.min_pos = min_pos;
+        this.pos_step = pos_points > 1 ? (max_pos - min_pos) / (pos_points - 1) : 0;
+        this.pos_points = pos_points;
+
+        this.min_load = min_load;
+        this.load_step = load_points > 1 ? (max_load - min_load) / (load_points - 1) : 0;
+        this.load_points = load_points;
+
+        grid = new double[load_points * pos_points * GAIN_COUNT];
+    }
+
+    /**
+     * Sets the gains at a position grid point. Applies to the first load grid point.
+     * @param   pos_index   position grid index
+     * @param   pid         PID gains
+     * @param   ff          Feedforward gains
+     */
+    public void set(int pos_index, PIDParam pid, FFParam ff) {
+        set(pos_index, 0, pid, ff);
+    }
+
+    /**
+     * Sets the gains at a grid point
+     * @param   pos_index   position grid index
+     * @param   load_index  load grid index
+     * @param   pid         PID gains
+     * @param   ff          Feedforward gains
+     */
+    public void set(int pos_index, int load_index, PIDParam pid, FFParam ff) {
+        int base = (load_index * pos_points + pos_index) * GAIN_COUNT;
+
+        grid[base + KP] = pid.kP;
+        grid[base + KI] = pid.kI;
+        grid[base + KD] = pid.kD;
+        grid[base + KS] = ff.kS;
+        grid[base + KV] = ff.kV;
+        grid[base + KG] = ff.kG;
+        grid[base + KA] = ff.kA;
+    }
+
+    /**
+     * Gets the position of a grid point
+     * @param   pos_index   position grid index
+     * @return  position of the grid point
+     */
+    public double getPosition(int pos_index) {
+        return min_pos + pos_index * pos_step;
+    }
+
+    /**
+     * Gets the load of a grid point
+     * @param   load_index  load grid index
+     * @return  load of the grid point
+     */
+    public double getLoad(int load_index) {
+        return min_load + load_index * load_step;
+    }
+
+    /**
+     * Interpolates the gains at a position and load
+     * @param   pos     mechanism position
+     * @param   load    mechanism load. Ignored if the schedule has one load grid point.
+     * @param   gains   array of at least GAIN_COUNT values to hold the gains
+     */
+    public void lookup(double pos, double load, double[] gains) {
+        // Position cell and fraction
+        int p0 = 0;
+        int p1 = 0;
+        double pf = 0;
+
+        if(pos_points > 1) {
+            double pos_idx = pos_step != 0 ? (pos - min_pos) / pos_step : 0;
+            pos_idx = Math.max(0, Math.min(pos_points - 1, pos_idx));
+            p0 = Math.min((int)pos_idx, pos_points - 2);
+            p1 = p0 + 1;
+            pf = pos_idx - p0;
+        }
+
+        // Load cell and fraction
+        int l0 = 0;
+        int l1 = 0;
+        double lf = 0;
+
+        if(load_points > 1) {
+            double load_idx = load_step != 0 ? (load - min_load) / load_step : 0;
+            load_idx = Math.max(0, Math.min(load_points - 1, load_idx));
+            l0 = Math.min((int)load_idx, load_points - 2);
+            l1 = l0 + 1;
+            lf = load_idx - l0;
+        }
+
+        int b00 = (l0 * pos_points + p0) * GAIN_COUNT;
+        int b01 = (l0 * pos_points + p1) * GAIN_COUNT;
+        int b10 = (l1 * pos_points + p0) * GAIN_COUNT;
+        int b11 = (l1 * pos_points + p1) * GAIN_COUNT;
+
+        for(int i = 0; i < GAIN_COUNT; i++) {
+            double low = grid[b00 + i] + (grid[b01 + i] - grid[b00 + i]) * pf;
+            double high = grid[b10 + i] + (grid[b11 + i] - grid[b10 + i]) * pf;
+            gains[i] = low + (high - low) * lf;
+        }
+    }
+}
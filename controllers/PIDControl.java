@@ -0,0 +1,194 @@
+/**
+ * Copyright 2024 Ryan Fitz-Gerald
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to 
+ * deal in the Software without restriction, including without limitation the 
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or 
+ * sell copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING 
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER 
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package frc.lib2960.controllers;
+
+import edu.wpi.first.wpilibj.TimedRobot;
+
+/**
+ * Allocation free PID controller that accumulates the integral term instead of the integral 
+ * of the error. Changing kI does not change the accumulated integral output, so gains can be 
+ * changed every cycle without the output jumping. Setting kI to 0 clears the integral term. The 
+ * integral term can be read and seeded to carry it across controllers.
+ */
+public class PIDControl {
+    private double kP;                      /**< Proportional gain */
+    private double kI;                      /**< Integral gain */
+    private double kD;                      /**< Derivative gain */
+    private double period;                  /**< Update period in seconds */
+
+    private double integral_limit = 1;      /**< Maximum magnitude of the integral term */
+    private double seed_limit = 0;          /**< Integral limit widened by a seed. Shrinks as the 
+                                                 seeded term unwinds. */
+
+    private double integral_term = 0;       /**< Accumulated integral output */
+    private double prev_error = 0;          /**< Previous error */
+    private boolean has_prev = false;       /**< True if prev_error is valid */
+
+    /**
+     * Constructor
+     *      - period is set to TimedRobot.kDefaultPeriod
+     * @param   kP  Proportional gain
+     * @param   kI  Integral gain
+     * @param   kD  Derivative gain
+     */
+    public PIDControl(double kP, double kI, double kD) {
+        this(kP, kI, kD, TimedRobot.kDefaultPeriod);
+    }
+
+    /**
+     * Constructor
+     * @param   kP      Proportional gain
+     * @param   kI      Integral gain
+     * @param   kD      Derivative gain
+     * @param   period  Update period in seconds
+     */
+    public PIDControl(double kP, double kI, double kD, double period) {
+        this.kP = kP;
+        this.kI = kI;
+        this.kD = kD;
+        this.period = period;
+    }
+
+    /**
+     * Calculates the controller output
+     * @param   measurement     current measurement
+     * @param   setpoint        target value
+     * @return  controller output
+     */
+    public double calculate(double measurement, double setpoint) {
+        double error = setpoint - measurement;
+        double derivative = has_prev ? (error - prev_error) / period : 0;
+
+        prev_error = error;
+        has_prev = true;
+
+        if(kI != 0) {
+            // A seeded term may exceed the integral limit. It can unwind but never grow past 
+            // where it was seeded.
+            double limit = Math.max(integral_limit, seed_limit);
+            integral_term += kI * error * period;
+            integral_term = Math.max(-limit, Math.min(limit, integral_term));
+            seed_limit = Math.min(seed_limit, Math.abs(integral_term));
+        } else {
+            // Without an integral gain nothing can unwind the term, so drop it
+            integral_term = 0;
+            seed_limit = 0;
+        }
+
+        return kP * error + integral_term + kD * derivative;
+    }
+
+    /**
+     * Sets the controller gains. The accumulated integral term is kept unless kI is 0, in which 
+     * case it is cleared on the next calculate.
+     * @param   kP  Proportional gain
+     * @param   kI  Integral gain
+     * @param   kD  Derivative gain
+     */
+    public void setGains(double kP, double kI, double kD) {
+        this.kP = kP;
+        this.kI = kI;
+        this.kD = kD;
+    }
+
+    /**
+     * Sets the update period. Must match the rate calculate is called at.
+     * @param   period  Update period in seconds
+     */
+    public void setPeriod(double period) {
+        this.period = period;
+    }
+
+    /**
+     * Gets the update period
+     * @return  Update period in seconds
+     */
+    public double getPeriod() {
+        return period;
+    }
+
+    /**
+     * Sets the maximum magnitude of the integral term
+     * @param   integral_limit  maximum magnitude of the integral term
+     */
+    public void setIntegralLimit(double integral_limit) {
+        this.integral_limit = integral_limit;
+    }
+
+    /**
+     * Gets the accumulated integral term
+     * @return  accumulated integral term
+     */
+    public double getIntegralTerm() {
+        return integral_term;
+    }
+
+    /**
+     * Seeds the accumulated integral term
+     * @param   integral_term   new integral term
+     */
+    public void setIntegralTerm(double integral_term) {
+        this.integral_term = Math.max(-integral_limit, Math.min(integral_limit, integral_term));
+    }
+
+    /**
+     * Seeds the integral term and derivative history so the next output continues smoothly 
+     * from a previous controller. The integral term is not clamped to the integral limit so 
+     * any output can be carried over. A term seeded past the limit can only unwind.
+     * @param   integral_term   new integral term
+     * @param   prev_error      error from the previous cycle
+     */
+    public void seed(double integral_term, double prev_error) {
+        this.integral_term = integral_term;
+        this.seed_limit = Math.abs(integral_term);
+        this.prev_error = prev_error;
+        this.has_prev = true;
+    }
+
+    /**
+     * Gets the proportional gain
+     * @return  proportional gain
+     */
+    public double getP() {
+        return kP;
+    }
+
+    /**
+     * Gets the integral gain
+     * @return  integral gain
+     */
+    public double getI() {
+        return kI;
+    }
+
+    /**
+     * Resets the integral term and derivative history
+     */
+    public void reset() {
+        integral_term = 0;
+        seed_limit = 0;
+        prev_error = 0;
+        has_prev = false;
+    }
+}
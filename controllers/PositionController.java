@@ -30,14 +30,25 @@ import edu.wpi.first.wpilibj.TimedRobot;
  * Position Controller Class
  */
 public class PositionController {
+    /**
+     * Motion Profile Type Enum
+     */
+    public enum ProfileType {TRAPEZOID, S_CURVE};
+
+    public static final double DEFAULT_BRAKING_GAIN = 10;  /**< Default trapezoid braking gain */
+
     /**
      * Position Controller Settings
      */
-    public class Settings {
+    public static class Settings {
         public final double max_accel;      /**< Maximum acceleration rate */
         public final double max_decel;      /**< Maximum deceleration rate */
         public final double max_rate;       /**< Maximum rate */
 
+        public final ProfileType profile_type;  /**< Motion profile type */
+        public final double max_jerk;           /**< Maximum jerk. Only used by S_CURVE. S_CURVE 
+                                                     runs as TRAPEZOID if not positive. */
+
         public final boolean is_cont;       /**< Continuous position range  */
         public final Limits cont_range;     /**< Range of a continuous position controller */
 
@@ -62,6 +73,8 @@ public class PositionController {
             this.is_cont = is_cont;
             this.cont_range = cont_range;
             this.period = period;
+            this.profile_type = ProfileType.TRAPEZOID;
+            this.max_jerk = 0;
         }
         
         /**
@@ -80,6 +93,8 @@ public class PositionController {
             this.is_cont = is_cont;
             this.cont_range = cont_range;
             this.period = TimedRobot.kDefaultPeriod;
+            this.profile_type = ProfileType.TRAPEZOID;
+            this.max_jerk = 0;
         }
         
         /**
@@ -98,17 +113,166 @@ public class PositionController {
             this.is_cont = false;
             this.cont_range = new Limits(0,0);
             this.period = TimedRobot.kDefaultPeriod;
+            this.profile_type = ProfileType.TRAPEZOID;
+            this.max_jerk = 0;
+        }
+
+        /**
+         * Constructor. Creates a jerk limited S_CURVE profile.
+         * @param   max_accel   Maximum acceleration rate
+         * @param   max_decel   Maximum deceleration rate
+         * @param   max_rate    Maximum rate
+         * @param   max_jerk    Maximum rate of change of acceleration
+         * @param   is_cont     Continuous position roll over flag. Set to true to allow roll over 
+         *                          at lower and upper limits set in cont_range. Limits ignored if
+         *                          False.
+         * @param   cont_range  Range of a continuous position controller
+         * @param   period      Update period of the controller
+         */
+        public Settings(double max_accel, double max_decel, double max_rate, double max_jerk, 
+                        boolean is_cont, Limits cont_range, double period) {
+            this.max_accel = max_accel;
+            this.max_decel = max_decel;
+            this.max_rate = max_rate;
+            this.is_cont = is_cont;
+            this.cont_range = cont_range;
+            this.period = period;
+            this.profile_type = ProfileType.S_CURVE;
+            this.max_jerk = max_jerk;
+        }
+
+        /**
+         * Constructor. Creates a jerk limited S_CURVE profile.
+         *      - cont_range is set to (0, 0)
+         *      - is_cont is set to False
+         *      - period set to TimeRobot.kDefaultPeriod.
+         * @param   max_accel   Maximum acceleration rate
+         * @param   max_decel   Maximum deceleration rate
+         * @param   max_rate    Maximum rate
+         * @param   max_jerk    Maximum rate of change of acceleration
+         */
+        public Settings(double max_accel, double max_decel, double max_rate, double max_jerk) {
+            this.max_accel = max_accel;
+            this.max_decel = max_decel;
+            this.max_rate = max_rate;
+            this.is_cont = false;
+            this.cont_range = new Limits(0,0);
+            this.period = TimedRobot.kDefaultPeriod;
+            this.profile_type = ProfileType.S_CURVE;
+            this.max_jerk = max_jerk;
         }
     }
 
     public final Settings settings;    /**< Position Controller Settings */
 
+    private double target_rate = 0;     /**< Most recent target rate */
+    private double target_accel = 0;    /**< Most recent target acceleration */
+    private boolean is_reset = true;    /**< Profile state needs to be seeded flag */
+    private double time_scale = 1;      /**< Profile time scale. Stretches the profile when 
+                                             less than 1. */
+    private double period;              /**< Update period. Starts at settings.period. */
+    private double braking_gain = DEFAULT_BRAKING_GAIN;    /**< Trapezoid braking gain */
+
     /**
      * Constructor
      * @param   settings    Position Controller Settings
      */
     public PositionController(Settings settings) {
         this.settings = settings;
+        this.period = settings.period;
+    }
+
+    /**
+     * Sets the update period. Must match the rate update is called at, such as when the 
+     * controller runs on a fast control loop.
+     * @param   period  update period in seconds
+     */
+    public void setPeriod(double period) {
+        this.period = period;
+    }
+
+    /**
+     * Gets the update period
+     * @return  update period in seconds
+     */
+    public double getPeriod() {
+        return period;
+    }
+
+    /**
+     * Sets the trapezoid braking gain. Close to the target the trapezoid brakes with a position 
+     * gain of braking_gain * max_decel / max_rate instead of following the square root braking 
+     * curve, whose gain grows without bound as the error goes to zero. The gain does not depend 
+     * on the update period. Lower it if the mechanism rate loop cannot follow the final approach.
+     * @param   braking_gain    braking gain in units of max_decel / max_rate
+     */
+    public void setBrakingGain(double braking_gain) {
+        this.braking_gain = braking_gain;
+    }
+
+    /**
+     * Resets the profile state. The next update seeds the profile from the current rate. Call 
+     * when the controller starts tracking a new move.
+     */
+    public void reset() {
+        is_reset = true;
+    }
+
+    /**
+     * Sets the profile time scale. The maximum rate is scaled by the time scale, acceleration 
+     * limits by its square and the jerk limit by its cube, so a profile with a time scale of s 
+     * takes 1 / s times as long. Used to synchronize several axes.
+     * @param   time_scale  profile time scale between 0 and 1
+     */
+    public void setTimeScale(double time_scale) {
+        this.time_scale = Math.max(1e-3, Math.min(1, time_scale));
+    }
+
+    /**
+     * Gets the profile time scale
+     * @return  profile time scale
+     */
+    public double getTimeScale() {
+        return time_scale;
+    }
+
+    /**
+     * Estimates the time for an unscaled profile to move between two positions starting and 
+     * ending at rest. S-curve profiles add the acceleration ramp time to the trapezoid time.
+     * @param   current_pos     starting position
+     * @param   target_pos      target position
+     * @return  estimated profile time in seconds
+     */
+    public double getProfileTime(double current_pos, double target_pos) {
+        double dist = Math.abs(getError(current_pos, target_pos));
+        double accel = settings.max_accel;
+        double decel = settings.max_decel;
+        double max_rate = settings.max_rate;
+
+        double ramp_dist = max_rate * max_rate / (2 * accel) + max_rate * max_rate / (2 * decel);
+        double time;
+
+        if(dist >= ramp_dist) {
+            time = max_rate / accel + max_rate / decel + (dist - ramp_dist) / max_rate;
+        } else {
+            double peak_rate = Math.sqrt(2 * dist * accel * decel / (accel + decel));
+            time = peak_rate / accel + peak_rate / decel;
+        }
+
+        if(settings.profile_type == ProfileType.S_CURVE && settings.max_jerk > 0) {
+            time += Math.max(accel, decel) / settings.max_jerk;
+        }
+
+        return time;
+    }
+
+    /**
+     * Gets the target acceleration from the most recent update. Used to apply the kA 
+     * feedforward term in the rate controller.
+     * @return  target acceleration
+     */
+    public double getTargetAccel() {
+        return target_accel;
     }
 
     /**
@@ -119,7 +283,36 @@ public class PositionController {
      * @return  target rate for the position controller
      */
     public double update(double current_pos, double current_rate, double target_pos) {
-        // Calculate error and direction to target
+        double error = getError(current_pos, target_pos);
+
+        if(is_reset) {
+            target_rate = current_rate;
+            target_accel = 0;
+            is_reset = false;
+        }
+
+        double rate;
+
+        // S-curve profiles without a jerk limit fall back to the trapezoid
+        if(settings.profile_type == ProfileType.S_CURVE && settings.max_jerk > 0) {
+            rate = updateSCurve(error);
+        } else {
+            rate = updateTrapezoid(error, current_rate);
+        }
+
+        target_rate = rate;
+
+        return rate;
+    }
+
+    /**
+     * Calculates the error to the target. Continuous controllers take the shortest path across 
+     * the roll over point.
+     * @param   current_pos     current mechanism position
+     * @param   target_pos      target mechanism position
+     * @return  error to the target
+     */
+    private double getError(double current_pos, double target_pos) {
         double error = target_pos - current_pos;
 
         if(settings.is_cont) {
@@ -131,19 +324,101 @@ public class PositionController {
             if(Math.abs(error) > Math.abs(error_high)) error = error_high;
         }
 
+        return error;
+    }
+
+    /**
+     * Calculates the trapezoid profile target rate. The target acceleration is set to the 
+     * acceleration of the limit that sets the rate rather than differenced from the rate, 
+     * which follows the measured rate and would feed its noise into the kA term.
+     * @param   error           error to the target
+     * @param   current_rate    current mechanism rate
+     * @return  target rate
+     */
+    private double updateTrapezoid(double error, double current_rate) {
         double dir = error > 0 ? 1 : -1;
+        double max_rate = settings.max_rate * time_scale;
+        double max_accel = settings.max_accel * time_scale * time_scale;
+        double max_decel = settings.max_decel * time_scale * time_scale;
 
         // Calculate target Rate
-        double rate = dir * settings.max_rate;
-        double accel_rate = dir * settings.max_accel * settings.period + current_rate;
+        double rate = dir * max_rate;
+        double accel_rate = dir * max_accel * period + current_rate;
         
-        double decel_dist = Math.pow(settings.max_rate, 2) / (2 * settings.max_decel);
-        double decel_rate = error / decel_dist  * settings.max_decel;
+        // Fastest rate that can still stop at the target. Near the target the braking curve 
+        // becomes linear so the position gain stays finite instead of growing without bound.
+        double abs_error = Math.abs(error);
+        double gain = braking_gain * max_decel / max_rate;
+        double linear_dist = max_decel / (gain * gain);
+        double decel_rate = Math.copySign(
+            abs_error <= linear_dist ? 
+                gain * abs_error : 
+                Math.sqrt(2 * max_decel * (abs_error - linear_dist / 2)), 
+            error
+        );
         
-        if(Math.abs(rate - accel_rate) > settings.max_rate) rate = accel_rate;
-        if(Math.abs(rate) > Math.abs(accel_rate)) rate = accel_rate;
-        if(Math.abs(rate) > Math.abs(decel_rate)) rate = decel_rate;
+        target_accel = 0;
+
+        if(Math.abs(rate - accel_rate) > max_rate || Math.abs(rate) > Math.abs(accel_rate)) {
+            rate = accel_rate;
+            target_accel = dir * max_accel;
+        }
+
+        if(Math.abs(rate) > Math.abs(decel_rate)) {
+            rate = decel_rate;
+            target_accel = Math.abs(rate) < Math.abs(target_rate) ? -dir * max_decel : 0;
+        }
+
+        return rate;
+    }
+
+    /**
+     * Calculates the jerk limited S-curve profile target rate. The profile rate and acceleration 
+     * are integrated from the previous update so acceleration changes no faster than max_jerk.
+     * @param   error   error to the target
+     * @return  target rate
+     */
+    private double updateSCurve(double error) {
+        double dt = period;
+        double scale_sq = time_scale * time_scale;
+        double jerk = settings.max_jerk * scale_sq * time_scale;
+        double accel = settings.max_accel * scale_sq;
+        double decel = settings.max_decel * scale_sq;
+        double max_rate = settings.max_rate * time_scale;
+
+        // Rate and remaining error once the current acceleration is ramped to zero. Braking is 
+        // planned from this state so the profile starts slowing before it is too late.
+        double ramp_time = Math.abs(target_accel) / jerk;
+        double ramp_rate = target_rate + target_accel * ramp_time / 2;
+        double ramp_error = error - (target_rate * ramp_time + target_accel * ramp_time * ramp_time / 3);
+
+        // Fastest rate that can still stop at the target with a jerk limited deceleration
+        double ramp = decel * decel / jerk;
+        double stop_rate = (-ramp + Math.sqrt(ramp * ramp + 8 * decel * Math.abs(ramp_error))) / 2;
+        double desired_rate = Math.copySign(Math.min(max_rate, stop_rate), ramp_error);
+
+        // Acceleration that reaches the desired rate while leaving room to ramp acceleration down
+        double rate_error = desired_rate - ramp_rate;
+        boolean speeding_up = target_rate == 0 || Math.signum(rate_error) == Math.signum(target_rate);
+        double accel_limit = speeding_up ? accel : decel;
+        double desired_accel = Math.copySign(
+            Math.min(accel_limit, Math.sqrt(2 * jerk * Math.abs(rate_error))), 
+            rate_error
+        );
+
+        // Limit acceleration change by the maximum jerk
+        double max_step = jerk * dt;
+        double accel_step = Math.max(-max_step, Math.min(max_step, desired_accel - target_accel));
+        target_accel += accel_step;
+
+        double rate = target_rate + target_accel * dt;
+
+        // Do not cross the desired rate
+        if((target_rate <= desired_rate && rate > desired_rate) || (target_rate >= desired_rate && rate < desired_rate)) {
+            rate = desired_rate;
+            target_accel = (rate - target_rate) / dt;
+        }
 
         return rate;
     }
-}
\ No newline at end of file
+}
@@ -25,21 +25,46 @@ package frc.lib2960.controllers;
 import frc.lib2960.util.*;
 
 import edu.wpi.first.math.controller.*;
+import edu.wpi.first.wpilibj.Timer;
 
 /**
  * Implements rate control for mechanisms
  */
-public abstract class RateController {
+public class RateController {
     /**
      * Rate Controller Settings
      */
-    public class Settings {
-        public final FFParam ff;     /**< Feed Forward controller parameters */
-        public final PIDParam pid;   /**< PID controller parameters */
+    public static class Settings {
+        public final FFParam ff;                /**< Feed Forward controller parameters */
+        public final PIDParam pid;              /**< PID controller parameters */
+        public final boolean voltage_comp;      /**< Battery voltage compensation enable flag */
+        public final double nominal_voltage;    /**< Nominal bus voltage for compensation */
 
+        /**
+         * Constructor
+         *      - voltage_comp is set to false
+         *      - nominal_voltage is set to 12
+         * @param   ff      Feed Forward controller parameters
+         * @param   pid     PID controller parameters
+         */
         public Settings(FFParam ff, PIDParam pid) {
             this.ff = ff;
             this.pid = pid;
+            this.voltage_comp = false;
+            this.nominal_voltage = 12;
+        }
+
+        /**
+         * Constructor. Enables battery voltage compensation.
+         * @param   ff                  Feed Forward controller parameters
+         * @param   pid                 PID controller parameters
+         * @param   nominal_voltage     Bus voltage the output is calibrated against
+         */
+        public Settings(FFParam ff, PIDParam pid, double nominal_voltage) {
+            this.ff = ff;
+            this.pid = pid;
+            this.voltage_comp = true;
+            this.nominal_voltage = nominal_voltage;
         }
     }
 
@@ -54,7 +79,7 @@ public abstract class RateController {
          * @param   param   Feedforward Parameters
          */
         public FFControlBase(FFParam param){
-            this.settings = settings;
+            this.param = param;
         }
 
         /**
@@ -63,7 +88,20 @@ public abstract class RateController {
          * @param   target_rate     target mechanism rate
          */
         public double update(double current_pos, double target_rate) {
-            update(current_pos, target_rate, 0);
+            return update(current_pos, target_rate, 0);
+        }
+
+        /**
+         * Updates the feedforward value compensated for the current bus voltage
+         * @param   current_pos     current mechanism position
+         * @param   target_rate     target mechanism rate
+         * @param   target_accel    target mechanism acceleration
+         * @param   nominal_voltage bus voltage the gains are calibrated against
+         * @param   bus_voltage     current bus voltage
+         */
+        public double update(double current_pos, double target_rate, double target_accel, 
+                             double nominal_voltage, double bus_voltage) {
+            return compensate(update(current_pos, target_rate, target_accel), nominal_voltage, bus_voltage);
         }
 
         /**
@@ -73,6 +111,15 @@ public abstract class RateController {
          * @param   target_accel    target mechanism acceleration
          */
         public abstract double update(double current_pos, double target_rate, double target_accel);
+
+        /**
+         * Replaces the feedforward gains without resetting the controller
+         * @param   kS  Static gain in Volts
+         * @param   kV  Velocity Gain in Volts * seconds / distance
+         * @param   kG  Gravity Gain in Volts
+         * @param   kA  Acceleration Gain in Volts * seconds ^ 2 / distance
+         */
+        public abstract void setGains(double kS, double kV, double kG, double kA);
     }
 
     /**
@@ -102,6 +149,19 @@ public abstract class RateController {
         public double update(double current_pos, double target_rate, double target_accel) {
             return controller.calculate(target_rate, target_accel);
         }
+
+        /**
+         * Replaces the feedforward gains. kG is ignored.
+         * @param   kS  Static gain in Volts
+         * @param   kV  Velocity Gain in Volts * seconds / distance
+         * @param   kG  Gravity Gain in Volts
+         * @param   kA  Acceleration Gain in Volts * seconds ^ 2 / distance
+         */
+        public void setGains(double kS, double kV, double kG, double kA) {
+            controller.setKs(kS);
+            controller.setKv(kV);
+            controller.setKa(kA);
+        }
     }
 
 
@@ -128,7 +188,21 @@ public abstract class RateController {
          * @param   target_accel    target mechanism acceleration
          */
         public double update(double current_pos, double target_rate, double target_accel) {
-            controller.calcuate(current_pos, target_rate, target_accel);
+            return controller.calculate(current_pos, target_rate, target_accel);
+        }
+
+        /**
+         * Replaces the feedforward gains
+         * @param   kS  Static gain in Volts
+         * @param   kV  Velocity Gain in Volts * seconds / distance
+         * @param   kG  Gravity Gain in Volts
+         * @param   kA  Acceleration Gain in Volts * seconds ^ 2 / distance
+         */
+        public void setGains(double kS, double kV, double kG, double kA) {
+            controller.setKs(kS);
+            controller.setKv(kV);
+            controller.setKg(kG);
+            controller.setKa(kA);
         }
     }
 
@@ -156,40 +230,386 @@ public abstract class RateController {
          * @param   target_accel    target mechanism acceleration
          */
         public double update(double current_pos, double target_rate, double target_accel) {
-            controller.calcuate(current_pos, target_rate, target_accel);
+            return controller.calculate(target_rate, target_accel);
+        }
+
+        /**
+         * Replaces the feedforward gains
+         * @param   kS  Static gain in Volts
+         * @param   kV  Velocity Gain in Volts * seconds / distance
+         * @param   kG  Gravity Gain in Volts
+         * @param   kA  Acceleration Gain in Volts * seconds ^ 2 / distance
+         */
+        public void setGains(double kS, double kV, double kG, double kA) {
+            controller.setKs(kS);
+            controller.setKv(kV);
+            controller.setKg(kG);
+            controller.setKa(kA);
         }
     }
 
     protected final Settings settings;      /**< Controller settings */
     
-    private final PIDController pidControl; /**< PID Controller object */
+    private final PIDControl pidControl;    /**< PID Controller object */
     private final FFControlBase ffControl;  /**< Feed Forward controller object */
+
+    private FFEstimator estimator = null;   /**< Feedforward gain estimator. Null if disabled. */
+    private boolean auto_tune = false;      /**< Apply estimated gains to the feedforward */
+    private long min_samples = 250;         /**< Samples required before estimates are applied */
+    private TelemetryGroup estimator_tlm;   /**< Gain estimate telemetry */
+
+    private GainSchedule schedule = null;   /**< Gain schedule. Null if disabled. */
+    private volatile double load = 0;       /**< Current gain schedule load parameter */
+    private final double[] gains;           /**< Scheduled gain buffer */
+
+    private double last_pos = 0;            /**< Position at the last update */
+    private double last_rate = 0;           /**< Rate at the last update */
+    private double last_target_rate = 0;    /**< Target rate at the last update */
+    private double last_target_accel = 0;   /**< Target acceleration at the last update */
+    private double last_output = 0;         /**< Uncompensated output at the last update */
+
+    // Estimator Telemetry
+    private static final int TLM_KS = 0;
+    private static final int TLM_KV = 1;
+    private static final int TLM_KG = 2;
+    private static final int TLM_KA = 3;
+    private static final int TLM_ERROR = 4;
+    private static final int TLM_SAMPLES = 5;
     
     /**
      * Constructor
      * @param   settings    Rate Controller Settings
      */
     public RateController (Settings settings) {
-        self.settings = settings;
+        this.settings = settings;
 
         // Initialize PID Controller
-        pidControl = PIDController(settings.pid.kP, settings.pid.kI, settings.pid.kD);
+        pidControl = new PIDControl(settings.pid.kP, settings.pid.kI, settings.pid.kD);
+        gains = new double[GainSchedule.GAIN_COUNT];
         
         // Initialize Feedforward controller
         if(settings.ff.type == FFParam.FFType.SIMPLE) {
             ffControl = new FFControlSimple(settings.ff);
         } else if(settings.ff.type == FFParam.FFType.ARM) {
             ffControl = new FFControlArm(settings.ff);
-        } else if(settings.ff.type == FFParam.FFType.ELEVATOR) {
+        } else {
             ffControl = new FFControlElevator(settings.ff);
         }
     }
 
     /**
      * Update the controller output value
+     * @param   current_pos     current position of the mechanism
+     * @param   current_rate    current rate of the mechanism
+     * @param   target_rate     target rate of the mechanism
+     * @return  output for the mechanism
      */
     public double update(double current_pos, double current_rate, double target_rate) {
-        return update_ff(current_pos, target_rate) + update_pid(current_rate, target_rate); 
+        return update(current_pos, current_rate, target_rate, 0);
+    }
+
+    /**
+     * Update the controller output value
+     * @param   current_pos     current position of the mechanism
+     * @param   current_rate    current rate of the mechanism
+     * @param   target_rate     target rate of the mechanism
+     * @param   target_accel    target acceleration of the mechanism
+     * @return  output for the mechanism
+     */
+    public double update(double current_pos, double current_rate, double target_rate, double target_accel) {
+        if(schedule != null) applySchedule(current_pos);
+
+        double output = update_ff(current_pos, target_rate, target_accel) + update_pid(current_rate, target_rate);
+
+        last_pos = current_pos;
+        last_rate = current_rate;
+        last_target_rate = target_rate;
+        last_target_accel = target_accel;
+        last_output = output;
+
+        if(settings.voltage_comp) {
+            output = compensate(output, settings.nominal_voltage, BatteryMonitor.getInstance().getVoltage());
+        }
+
+        return output;
+    }
+
+    /**
+     * Adds a gain estimator sample for the last update using the voltage actually applied to 
+     * the motors. Call after the output has been limited, scaled and applied, so the estimator 
+     * does not fit output the motors never received. Does nothing if estimation is disabled.
+     * @param   applied     voltage applied to the motors. Compensated output if voltage 
+     *                          compensation is enabled.
+     */
+    public void updateEstimator(double applied) {
+        if(estimator == null) return;
+
+        double bus_voltage = BatteryMonitor.getInstance().getVoltage();
+
+        if(settings.voltage_comp) applied = applied * bus_voltage / settings.nominal_voltage;
+
+        // The motors can not deliver more than the bus voltage
+        if(bus_voltage > 0) applied = Math.max(-bus_voltage, Math.min(bus_voltage, applied));
+
+        addEstimatorSample(last_pos, last_rate, applied);
+    }
+
+    /**
+     * Skips the gain estimator sample for the last update. Call instead of updateEstimator when 
+     * the applied voltage does not follow the feedforward model, such as at a limit. Does 
+     * nothing if estimation is disabled.
+     */
+    public void skipEstimatorSample() {
+        if(estimator != null) estimator.skipSample();
+    }
+
+    /**
+     * Enables online estimation of the feedforward gains. Estimates are published under the 
+     * given telemetry name but are not applied until auto tune is enabled. The owner of the 
+     * controller feeds the estimator with updateEstimator.
+     *      - forgetting is set to 0.995
+     * @param   name    telemetry name for the estimates
+     */
+    public void enableEstimator(String name) {
+        enableEstimator(name, 0.995);
+    }
+
+    /**
+     * Enables online estimation of the feedforward gains. Estimates are published under the 
+     * given telemetry name but are not applied until auto tune is enabled. The owner of the 
+     * controller feeds the estimator with updateEstimator.
+     * @param   name        telemetry name for the estimates
+     * @param   forgetting  estimator forgetting factor between 0 and 1
+     */
+    public void enableEstimator(String name, double forgetting) {
+        estimator = new FFEstimator(settings.ff, forgetting, 1000);
+
+        if(estimator_tlm == null) {
+            estimator_tlm = TelemetryRegistry.getInstance().register(
+                name + " FF Estimate", "kS", "kV", "kG", "kA", "Error", "Samples"
+            );
+        }
+    }
+
+    /**
+     * Disables online estimation. Gains already applied to the feedforward are kept.
+     */
+    public void disableEstimator() {
+        estimator = null;
+    }
+
+    /**
+     * Gets the feedforward gain estimator
+     * @return  feedforward gain estimator. Null if estimation is disabled.
+     */
+    public FFEstimator getEstimator() {
+        return estimator;
+    }
+
+    /**
+     * Sets if estimated gains are applied to the feedforward while the controller runs
+     * @param   enabled         true to apply estimated gains
+     * @param   min_samples     number of samples required before estimates are applied
+     */
+    public void setAutoTune(boolean enabled, long min_samples) {
+        this.auto_tune = enabled;
+        this.min_samples = min_samples;
+    }
+
+    /**
+     * Restores the feedforward gains from the controller settings
+     */
+    public void resetGains() {
+        ffControl.setGains(settings.ff.kS, settings.ff.kV, settings.ff.kG, settings.ff.kA);
+        if(estimator != null) estimator.reset(settings.ff);
+    }
+
+    /**
+     * Adds a sample to the gain estimator, publishes the estimates, and applies them if auto 
+     * tune is enabled
+     * @param   current_pos     current position of the mechanism
+     * @param   current_rate    current rate of the mechanism
+     * @param   voltage         uncompensated voltage applied to the motors
+     */
+    private void addEstimatorSample(double current_pos, double current_rate, double voltage) {
+        estimator.addSample(Timer.getFPGATimestamp(), current_pos, current_rate, voltage);
+
+        double kS = estimator.getKS();
+        double kV = estimator.getKV();
+        double kG = estimator.getKG();
+        double kA = estimator.getKA();
+
+        estimator_tlm.set(TLM_KS, kS);
+        estimator_tlm.set(TLM_KV, kV);
+        estimator_tlm.set(TLM_KG, kG);
+        estimator_tlm.set(TLM_KA, kA);
+        estimator_tlm.set(TLM_ERROR, estimator.getError());
+        estimator_tlm.set(TLM_SAMPLES, estimator.getSampleCount());
+
+        // Only apply physically meaningful estimates
+        if(auto_tune && schedule == null && estimator.getSampleCount() >= min_samples && kV > 0 && kA >= 0) {
+            ffControl.setGains(kS, kV, kG, kA);
+        }
+    }
+
+    /**
+     * Sets a gain schedule. The PID and feedforward gains are interpolated from the schedule 
+     * every update. The integral term is carried across gain changes so the output does not 
+     * jump. Estimated gains are not applied while a schedule is set.
+     * @param   schedule    gain schedule. Null to return to the configured gains.
+     */
+    public void setGainSchedule(GainSchedule schedule) {
+        this.schedule = schedule;
+
+        if(schedule == null) {
+            pidControl.setGains(settings.pid.kP, settings.pid.kI, settings.pid.kD);
+            ffControl.setGains(settings.ff.kS, settings.ff.kV, settings.ff.kG, settings.ff.kA);
+        }
+    }
+
+    /**
+     * Sets the gain schedule load parameter. May be called from any thread.
+     * @param   load    current mechanism load
+     */
+    public void setLoad(double load) {
+        this.load = load;
+    }
+
+    /**
+     * Gets the accumulated PID integral term
+     * @return  accumulated PID integral term
+     */
+    public double getIntegralTerm() {
+        return pidControl.getIntegralTerm();
+    }
+
+    /**
+     * Sets the maximum magnitude of the PID integral term. Defaults to 1 volt. Seeding the 
+     * controller may exceed the limit so a handoff can carry any output.
+     * @param   integral_limit  maximum magnitude of the integral term in volts
+     */
+    public void setIntegralLimit(double integral_limit) {
+        pidControl.setIntegralLimit(integral_limit);
+    }
+
+    /**
+     * Seeds the accumulated PID integral term. Used to transfer control between controllers 
+     * without the output jumping.
+     * @param   integral_term   new integral term
+     */
+    public void setIntegralTerm(double integral_term) {
+        pidControl.setIntegralTerm(integral_term);
+    }
+
+    /**
+     * Seeds the controller so its next output continues from a known output. The integral term 
+     * is chosen so that the output at the given state equals the given output, and the 
+     * derivative history is set to the given error. If the integral gain is 0, only the 
+     * derivative history is seeded.
+     * @param   output          output to continue from in volts. Compensated output if voltage 
+     *                              compensation is enabled.
+     * @param   current_pos     current position of the mechanism
+     * @param   current_rate    current rate of the mechanism
+     * @param   target_rate     target rate of the mechanism
+     * @param   target_accel    target acceleration of the mechanism
+     */
+    public void seed(double output, double current_pos, double current_rate, 
+                     double target_rate, double target_accel) {
+        if(settings.voltage_comp) {
+            output = output * BatteryMonitor.getInstance().getVoltage() / settings.nominal_voltage;
+        }
+
+        seedUncompensated(output, current_pos, current_rate, target_rate, target_accel);
+    }
+
+    /**
+     * Seeds the controller from the last update of another controller so control transfers 
+     * without the output jumping
+     * @param   other   controller handing over control
+     */
+    public void transferFrom(RateController other) {
+        seedUncompensated(other.last_output, other.last_pos, other.last_rate, 
+                          other.last_target_rate, other.last_target_accel);
+    }
+
+    /**
+     * Gets the uncompensated output from the last update
+     * @return  uncompensated output from the last update in volts
+     */
+    public double getLastOutput() {
+        return last_output;
+    }
+
+    /**
+     * Sets the PID update period. Must match the rate update is called at.
+     * @param   period  update period in seconds
+     */
+    public void setPeriod(double period) {
+        pidControl.setPeriod(period);
+    }
+
+    /**
+     * Resets the PID integral term and derivative history
+     */
+    public void reset() {
+        pidControl.reset();
+    }
+
+    /**
+     * Seeds the controller from an uncompensated output
+     * @param   output          uncompensated output in volts
+     * @param   current_pos     current position of the mechanism
+     * @param   current_rate    current rate of the mechanism
+     * @param   target_rate     target rate of the mechanism
+     * @param   target_accel    target acceleration of the mechanism
+     */
+    private void seedUncompensated(double output, double current_pos, double current_rate, 
+                                   double target_rate, double target_accel) {
+        if(schedule != null) applySchedule(current_pos);
+
+        double error = target_rate - current_rate;
+        double ff = update_ff(current_pos, target_rate, target_accel);
+
+        // Without an integral gain the integral term would never decay, so only the derivative 
+        // history is seeded
+        double integral_term = pidControl.getI() != 0 ? output - ff - pidControl.getP() * error : 0;
+        pidControl.seed(integral_term, error);
+
+        last_pos = current_pos;
+        last_rate = current_rate;
+        last_target_rate = target_rate;
+        last_target_accel = target_accel;
+        last_output = output;
+    }
+
+    /**
+     * Applies the scheduled gains for the current position and load
+     * @param   current_pos     current position of the mechanism
+     */
+    private void applySchedule(double current_pos) {
+        schedule.lookup(current_pos, load, gains);
+
+        pidControl.setGains(gains[GainSchedule.KP], gains[GainSchedule.KI], gains[GainSchedule.KD]);
+        ffControl.setGains(gains[GainSchedule.KS], gains[GainSchedule.KV], 
+                           gains[GainSchedule.KG], gains[GainSchedule.KA]);
+    }
+
+    /**
+     * Scales an output calibrated against the nominal bus voltage so the same voltage is 
+     * delivered at the current bus voltage. The requested voltage is clamped to the available 
+     * headroom before scaling. Intended for motor outputs that map volts to duty cycle against 
+     * the nominal voltage.
+     * @param   output              output in volts at nominal bus voltage
+     * @param   nominal_voltage     nominal bus voltage
+     * @param   bus_voltage         current bus voltage
+     * @return  compensated output
+     */
+    public static double compensate(double output, double nominal_voltage, double bus_voltage) {
+        if(bus_voltage <= 0) return output;
+
+        output = Math.max(-bus_voltage, Math.min(bus_voltage, output));
+
+        return output * nominal_voltage / bus_voltage;
     }
 
     /**
@@ -203,12 +623,13 @@ public abstract class RateController {
     }
 
     /**
-     * Update PID controller output
+     * Update Feedforward controller output
      * @param   current_pos     current position of the mechanism
      * @param   target_rate     target rate of the mechanism
+     * @param   target_accel    target acceleration of the mechanism
      * @return  output for the mechanism
      */
-    private double update_ff(double current_pos, double target_rate) {
-        return ffControl.update(current_pos, target_pos);
+    private double update_ff(double current_pos, double target_rate, double target_accel) {
+        return ffControl.update(current_pos, target_rate, target_accel);
     }
 }
\ No newline at end of file
@@ -0,0 +1,81 @@
+/**
+ * Copyright 2024 Ryan Fitz-Gerald
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to 
+ * deal in the Software without restriction, including without limitation the 
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or 
+ * sell copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING 
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER 
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package frc.lib2960.controllers;
+
+/**
+ * Single writer setpoint handoff between threads. The writer never blocks and the reader always 
+ * sees a consistent mode and value pair. Implemented as a sequence lock over volatile fields so 
+ * neither side allocates.
+ */
+public class SetpointSlot {
+    private volatile int sequence = 0;  /**< Write sequence. Odd while a write is in progress. */
+    private volatile int mode = 0;      /**< Setpoint mode */
+    private volatile double value_a = 0;    /**< First setpoint value */
+    private volatile double value_b = 0;    /**< Second setpoint value */
+
+    /**
+     * Writes a new setpoint. Must only be called from a single thread.
+     * @param   mode        Setpoint mode
+     * @param   value_a     First setpoint value
+     * @param   value_b     Second setpoint value
+     */
+    public void write(int mode, double value_a, double value_b) {
+        int seq = sequence;
+
+        sequence = seq + 1;
+        this.mode = mode;
+        this.value_a = value_a;
+        this.value_b = value_b;
+        sequence = seq + 2;
+    }
+
+    /**
+     * Writes a new setpoint with a single value. Must only be called from a single thread.
+     * @param   mode        Setpoint mode
+     * @param   value       Setpoint value
+     */
+    public void write(int mode, double value) {
+        write(mode, value, 0);
+    }
+
+    /**
+     * Reads the most recent setpoint
+     * @param   values  Array of at least 2 values to hold the setpoint values
+     * @return  setpoint mode
+     */
+    public int read(double[] values) {
+        while(true) {
+            int seq = sequence;
+
+            if((seq & 1) == 0) {
+                int result = mode;
+                values[0] = value_a;
+                values[1] = value_b;
+
+                if(seq == sequence) return result;
+            }
+
+            Thread.onSpinWait();
+        }
+    }
+}
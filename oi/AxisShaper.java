@@ -0,0 +1,229 @@
+/**
+ * Copyright 2024 Ryan Fitz-Gerald
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to 
+ * deal in the Software without restriction, including without limitation the 
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or 
+ * sell copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING 
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER 
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package frc.lib2960.oi;
+
+import java.util.function.DoubleSupplier;
+
+import edu.wpi.first.wpilibj.Joystick;
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Shapes a joystick axis for driving. The axis passes through a deadband, an expo or lookup 
+ * table curve, a scale and a rate limiter. All state is primitive so shaping does not allocate.
+ */
+public class AxisShaper implements DoubleSupplier {
+    private final int port;         /**< Joystick port the axis is on */
+    private final int axis;         /**< Index of the axis on the joystick */
+    private final boolean invert;   /**< Inverts the axis direction */
+
+    private double deadband = 0;    /**< Deadband as a fraction of full scale */
+    private double expo = 0;        /**< Expo blend. 0 is linear, 1 is fully cubic. */
+    private double[] curve = null;  /**< Lookup table curve. Null if expo is used. */
+    private double scale = 1;       /**< Output scale */
+    private double accel_rate = 0;  /**< Max rate of output moving away from zero. 0 is unlimited. */
+    private double decel_rate = 0;  /**< Max rate of output moving toward zero. 0 is unlimited. */
+
+    private double output = 0;          /**< Last output */
+    private double last_time = -1;      /**< Timestamp of the last output. -1 if not seeded. */
+
+    /**
+     * Constructor
+     *      - Deadband, expo and rate limits are disabled and scale is set to 1
+     * @param   joystick    Joystick the axis is on
+     * @param   axis        Index of the axis on the joystick
+     * @param   invert      Inverts the axis direction
+     */
+    public AxisShaper(Joystick joystick, int axis, boolean invert) {
+        this.port = joystick.getPort();
+        this.axis = axis;
+        this.invert = invert;
+    }
+
+    /**
+     * Constructor
+     *      - invert set to false
+     *      - Deadband, expo and rate limits are disabled and scale is set to 1
+     * @param   joystick    Joystick the axis is on
+     * @param   axis        Index of the axis on the joystick
+     */
+    public AxisShaper(Joystick joystick, int axis) {
+        this(joystick, axis, false);
+    }
+
+    /**
+     * Sets the deadband. Inputs inside the deadband are zero and the remaining range is 
+     * rescaled so the output is continuous.
+     * @param   deadband    deadband as a fraction of full scale
+     */
+    public void setDeadband(double deadband) {
+        this.deadband = Math.min(Math.max(deadband, 0), 0.99);
+    }
+
+    /**
+     * Sets the expo curve. Clears the lookup table curve.
+     * @param   expo    blend between linear and cubic. 0 is linear, 1 is fully cubic.
+     */
+    public void setExpo(double expo) {
+        this.expo = Math.min(Math.max(expo, 0), 1);
+        this.curve = null;
+    }
+
+    /**
+     * Sets a lookup table curve. The table maps evenly spaced input magnitudes from 0 to 1 to 
+     * output magnitudes and is interpolated linearly. The sign of the input is kept.
+     * @param   curve   output magnitudes. Must have at least two points.
+     */
+    public void setCurve(double... curve) {
+        if(curve.length < 2) throw new IllegalArgumentException("Curve must have at least two points");
+        this.curve = curve.clone();
+    }
+
+    /**
+     * Sets the output scale
+     * @param   scale   output at full deflection
+     */
+    public void setScale(double scale) {
+        this.scale = scale;
+    }
+
+    /**
+     * Sets the rate limit
+     * @param   rate    max rate of change of the output in output units per second. 0 is 
+     *                      unlimited.
+     */
+    public void setRateLimit(double rate) {
+        setRateLimit(rate, rate);
+    }
+
+    /**
+     * Sets the rate limits
+     * @param   accel_rate  max rate of change of the output moving away from zero in output 
+     *                          units per second. 0 is unlimited.
+     * @param   decel_rate  max rate of change of the output moving toward zero in output units 
+     *                          per second. 0 is unlimited.
+     */
+    public void setRateLimit(double accel_rate, double decel_rate) {
+        this.accel_rate = Math.abs(accel_rate);
+        this.decel_rate = Math.abs(decel_rate);
+    }
+
+    /**
+     * Resets the rate limiter to an output. The next output is rate limited from this output 
+     * starting now.
+     * @param   output  output to reset to
+     */
+    public void reset(double output) {
+        this.output = output;
+        this.last_time = Timer.getFPGATimestamp();
+    }
+
+    /**
+     * Gets the shaped axis value. Reads the InputService joystick snapshot.
+     * @return  shaped axis value
+     */
+    @Override
+    public double getAsDouble() {
+        double time = Timer.getFPGATimestamp();
+        double dt = last_time < 0 ? 0 : time - last_time;
+        last_time = time;
+
+        double value = InputService.getInstance().getAxis(port, axis);
+        return calculate(invert ? -value : value, dt);
+    }
+
+    /**
+     * Gets the last output without sampling the axis
+     * @return  last output
+     */
+    public double getLastOutput() {
+        return output;
+    }
+
+    /**
+     * Shapes an input and updates the rate limiter
+     * @param   input   raw axis value
+     * @param   dt      time since the last update in seconds. A rate limited output does not 
+     *                      move if dt is 0.
+     * @return  shaped value
+     */
+    public double calculate(double input, double dt) {
+        double target = shape(input) * scale;
+
+        dt = Math.max(dt, 0);
+
+        // Moving toward zero uses decel rate. A reversal only decelerates as far as zero and 
+        // spends the rest of the update accelerating toward the target.
+        double delta = target - output;
+
+        if(output != 0 && (delta > 0) != (output > 0)) {
+            double to_zero = target * output < 0 ? -output : delta;
+
+            if(decel_rate > 0) {
+                double max_step = decel_rate * dt;
+
+                if(Math.abs(to_zero) > max_step) {
+                    output += Math.copySign(max_step, to_zero);
+                    return output;
+                }
+
+                dt -= Math.abs(to_zero) / decel_rate;
+            }
+
+            output += to_zero;
+            delta = target - output;
+        }
+
+        // Moving away from zero uses accel rate
+        if(accel_rate > 0) {
+            double max_step = accel_rate * dt;
+            delta = Math.min(Math.max(delta, -max_step), max_step);
+        }
+
+        output += delta;
+        return output;
+    }
+
+    /**
+     * Applies the deadband and curve to an input
+     * @param   input   raw axis value
+     * @return  shaped value between -1 and 1
+     */
+    public double shape(double input) {
+        double mag = Math.min(Math.abs(input), 1);
+
+        if(mag <= deadband) return 0;
+        mag = (mag - deadband) / (1 - deadband);
+
+        if(curve != null) {
+            double index = mag * (curve.length - 1);
+            int i = Math.min((int)index, curve.length - 2);
+            double frac = index - i;
+            mag = curve[i] + (curve[i + 1] - curve[i]) * frac;
+        } else {
+            mag = (1 - expo) * mag + expo * mag * mag * mag;
+        }
+
+        return input < 0 ? -mag : mag;
+    }
+}
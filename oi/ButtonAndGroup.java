@@ -25,27 +25,36 @@ package frc.lib2960.oi;
 /**
  * Button group for and-ing buttons together
  */
-public class ButtonOrGroup extends ButtonBase {
+public class ButtonAndGroup extends ButtonBase {
     private ButtonBase[] buttons;   /**< Buttons in the group */
 
     /**
      * Constructor
      * @param   buttons     Buttons in the group
      */
-    public ButtonOrGroup(ButtonBase... buttons) {
+    public ButtonAndGroup(ButtonBase... buttons) {
         this.buttons = buttons;
     }
 
     /**
-     * Check if the button is pressed.
+     * Check if the button is pressed. Uses the latched state of the buttons in the group and 
+     * stops at the first button that decides the result.
      * @return  true if all buttons are pressed
      */
     @Override
     public boolean pressed() {
-        boolean result = true;
+        for(var button: buttons) {
+            if(!button.isPressed()) return false;
+        }
 
-        for(var button: buttons) result &= button.pressed();
+        return true;
+    }
 
-        return result;
+    /**
+     * Gets the buttons in the group
+     * @return  buttons in the group
+     */
+    ButtonBase[] getButtons() {
+        return buttons;
     }
 }
\ No newline at end of file
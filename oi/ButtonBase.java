@@ -23,59 +23,78 @@
 package frc.lib2960.oi;
 
 /**
- * Base class for button object
+ * Base class for button object. The button state is latched once per cycle by the 
+ * InputService, so pressed state and edge checks return the same result for every caller 
+ * within a cycle. Buttons are expected to be created once at startup.
  */
 public abstract class ButtonBase {
-    // TODO find improved way to update rising and falling edge checks
-
     /**
      * Button Pressed Edge type enumeration
      */
     public enum EdgeType {NONE, RISING, FALLING};
 
-    private boolean last_state;     /**< Button state the last time an edge check was preformed */
+    private boolean state = false;      /**< Button state latched this cycle */
+    private boolean last_state = false; /**< Button state latched last cycle */
+    private boolean is_seeded = false;  /**< True once the button has been latched */
 
+    /**
+     * Constructor. Registers the button with the InputService.
+     */
     public ButtonBase() {
-        last_state = pressed();
+        InputService.getInstance().register(this);
     }
 
     /**
-     * Check an edge was detected. This will reset the last found state to the current state so 
-     * all further calls this cycle will return None.
-     * @return type of edge detected
+     * Latches the button state and edges for this cycle. Called once per cycle by the 
+     * InputService button program. A button that is held when first latched does not report a 
+     * rising edge.
+     * @param   value   sampled button state
      */
-    public EdgeType checkEdge() {
-        EdgeType result = EdgeType.NONE;
-        boolean cur_state = pressed();
-
-        if(cur_state && !last_state) result = EdgeType.RISING;
-        if(!cur_state && last_state) result = EdgeType.FALLING;
+    void latch(boolean value) {
+        last_state = is_seeded ? state : value;
+        state = value;
+        is_seeded = true;
+    }
 
-        last_state = cur_state;
+    /**
+     * Checks if the button is pressed this cycle
+     * @return  true if the button was pressed when latched this cycle
+     */
+    public boolean isPressed() {
+        return state;
+    }
 
-        return result;
+    /**
+     * Check if an edge was detected this cycle. May be called any number of times per cycle.
+     * @return type of edge detected
+     */
+    public EdgeType checkEdge() {
+        if(state && !last_state) return EdgeType.RISING;
+        if(!state && last_state) return EdgeType.FALLING;
+        return EdgeType.NONE;
     }
     
     /**
-     * Checks if a Rising edge is detected. This will reset the last found state to the current 
-     * state so all further calls this cycle will return False. 
-     * @return true if a rising edge was detected since the last time an edge check was performed
+     * Checks if a Rising edge was detected this cycle. May be called any number of times per 
+     * cycle.
+     * @return true if the button changed from released to pressed this cycle
      */
     public boolean risingEdge() {
-        return checkEdge() == EdgeType.RISING;
+        return state && !last_state;
     }
     
     /**
-     * Checks if a Falling edge is detected. This will reset the last found state to the current 
-     * state so all further calls this cycle will return False. 
-     * @return true if a falling edge was detected since the last time an edge check was performed
+     * Checks if a Falling edge was detected this cycle. May be called any number of times per 
+     * cycle.
+     * @return true if the button changed from pressed to released this cycle
      */
     public boolean fallingEdge() {
-        return checkEdge() == EdgeType.falling;
+        return !state && last_state;
     }
 
     /**
-     * Checks if the button is pressed.
+     * Samples the button. Called once per cycle to latch the button state. Use isPressed() to 
+     * read the latched state.
      * @return true if the button is considered pressed
      */
     public abstract boolean pressed();
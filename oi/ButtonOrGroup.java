@@ -37,15 +37,24 @@ public class ButtonOrGroup extends ButtonBase {
     }
 
     /**
-     * Check if the button is pressed.
+     * Check if the button is pressed. Uses the latched state of the buttons in the group and 
+     * stops at the first button that decides the result.
      * @return  true if any button is pressed
      */
     @Override
     public boolean pressed() {
-        boolean result = false;
+        for(var button: buttons) {
+            if(button.isPressed()) return true;
+        }
 
-        for(var button: buttons) result |= button.pressed();
+        return false;
+    }
 
-        return result;
+    /**
+     * Gets the buttons in the group
+     * @return  buttons in the group
+     */
+    ButtonBase[] getButtons() {
+        return buttons;
     }
 }
\ No newline at end of file
@@ -0,0 +1,168 @@
+/**
+ * Copyright 2024 Ryan Fitz-Gerald
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to 
+ * deal in the Software without restriction, including without limitation the 
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or 
+ * sell copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING 
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER 
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package frc.lib2960.oi;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Flattens a set of buttons and button groups into a compact evaluation program. Every 
+ * distinct button gets one slot, so buttons shared between groups are sampled once. Groups 
+ * are ordered after their children and evaluated with short circuiting from the child slots. 
+ * Evaluating the program latches every button and does not allocate.
+ */
+public class ButtonProgram {
+    private static final int OP_LEAF = 0;   /**< Sample the button */
+    private static final int OP_AND = 1;    /**< And the child slots */
+    private static final int OP_OR = 2;     /**< Or the child slots */
+
+    private ButtonBase[] nodes = new ButtonBase[0];     /**< Button in each slot */
+    private int[] ops = new int[0];                     /**< Operation of each slot */
+    private int[] operand_start = new int[0];           /**< First operand of each slot */
+    private int[] operand_end = new int[0];             /**< End of the operands of each slot */
+    private int[] operands = new int[0];                /**< Child slot indices */
+    private boolean[] values = new boolean[0];          /**< Slot values this cycle */
+
+    /**
+     * Compiles the program. Allocates, so call only when the set of buttons changes.
+     * @param   buttons     buttons to evaluate. Children of groups are included automatically.
+     */
+    public void compile(List<ButtonBase> buttons) {
+        IdentityHashMap<ButtonBase, Integer> slots = new IdentityHashMap<>();
+        ArrayList<ButtonBase> order = new ArrayList<>();
+
+        for(int i = 0; i < buttons.size(); i++) addNode(buttons.get(i), slots, order);
+
+        int count = order.size();
+        int operand_count = 0;
+
+        for(int i = 0; i < count; i++) {
+            ButtonBase[] children = getChildren(order.get(i));
+            if(children != null) operand_count += children.length;
+        }
+
+        nodes = order.toArray(new ButtonBase[count]);
+        ops = new int[count];
+        operand_start = new int[count];
+        operand_end = new int[count];
+        operands = new int[operand_count];
+        values = new boolean[count];
+
+        int next = 0;
+
+        for(int i = 0; i < count; i++) {
+            ButtonBase node = nodes[i];
+            ButtonBase[] children = getChildren(node);
+
+            operand_start[i] = next;
+
+            if(children == null) {
+                ops[i] = OP_LEAF;
+            } else {
+                ops[i] = node instanceof ButtonAndGroup ? OP_AND : OP_OR;
+                for(var child : children) operands[next++] = slots.get(child);
+            }
+
+            operand_end[i] = next;
+        }
+    }
+
+    /**
+     * Evaluates every slot in order and latches the result into its button
+     */
+    public void evaluate() {
+        for(int i = 0; i < nodes.length; i++) {
+            boolean value;
+
+            switch(ops[i]) {
+                case OP_AND:
+                    value = true;
+                    for(int j = operand_start[i]; j < operand_end[i]; j++) {
+                        if(!values[operands[j]]) {
+                            value = false;
+                            break;
+                        }
+                    }
+                    break;
+                case OP_OR:
+                    value = false;
+                    for(int j = operand_start[i]; j < operand_end[i]; j++) {
+                        if(values[operands[j]]) {
+                            value = true;
+                            break;
+                        }
+                    }
+                    break;
+                default:
+                    value = nodes[i].pressed();
+                    break;
+            }
+
+            values[i] = value;
+            nodes[i].latch(value);
+        }
+    }
+
+    /**
+     * Gets the number of slots in the program
+     * @return  number of slots
+     */
+    public int size() {
+        return nodes.length;
+    }
+
+    /**
+     * Adds a button and its children to the program in post order
+     * @param   node    button to add
+     * @param   slots   slot index of each added button
+     * @param   order   buttons in slot order
+     */
+    private static void addNode(ButtonBase node, IdentityHashMap<ButtonBase, Integer> slots, 
+                                ArrayList<ButtonBase> order) {
+        if(slots.containsKey(node)) return;
+
+        // Reserve the node to stop cycles, then add children first
+        slots.put(node, -1);
+
+        ButtonBase[] children = getChildren(node);
+        if(children != null) {
+            for(var child : children) addNode(child, slots, order);
+        }
+
+        slots.put(node, order.size());
+        order.add(node);
+    }
+
+    /**
+     * Gets the children of a button group
+     * @param   node    button
+     * @return  children of the group. Null if the button is not a group.
+     */
+    private static ButtonBase[] getChildren(ButtonBase node) {
+        if(node instanceof ButtonAndGroup) return ((ButtonAndGroup)node).getButtons();
+        if(node instanceof ButtonOrGroup) return ((ButtonOrGroup)node).getButtons();
+        return null;
+    }
+}
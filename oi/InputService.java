@@ -0,0 +1,175 @@
+/**
+ * Copyright 2024 Ryan Fitz-Gerald
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to 
+ * deal in the Software without restriction, including without limitation the 
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or 
+ * sell copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING 
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER 
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package frc.lib2960.oi;
+
+import java.util.ArrayList;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+
+/**
+ * Samples every driver station joystick once per cycle into primitive snapshots and updates 
+ * the latched state of every button. Button states, edges, axes and POVs read through the 
+ * service are O(1) lookups that return the same value for the rest of the cycle no matter how 
+ * many times they are called.
+ */
+public class InputService extends SubsystemBase {
+    public static final int PORT_COUNT = DriverStation.kJoystickPorts;  /**< Number of joystick ports */
+    public static final int MAX_AXES = 12;                              /**< Maximum axes per joystick */
+
+    private static InputService instance = null;    /**< Service instance */
+
+    private final int[] buttons;            /**< Button bitmask per port. Bit 0 is button 1. */
+    private final int[] prev_buttons;       /**< Button bitmask per port from the last cycle */
+    private final int[] rising;             /**< Rising edge bitmask per port */
+    private final int[] falling;            /**< Falling edge bitmask per port */
+    private final double[][] axes;          /**< Axis values per port */
+    private final int[] povs;               /**< POV angle per port. -1 if not pressed. */
+
+    private final ArrayList<ButtonBase> button_objs;    /**< Buttons latched every cycle */
+    private final ButtonProgram program;                /**< Compiled button evaluation program */
+    private boolean is_compiled = false;                /**< True if the program is up to date */
+
+    /**
+     * Constructor
+     */
+    private InputService() {
+        buttons = new int[PORT_COUNT];
+        prev_buttons = new int[PORT_COUNT];
+        rising = new int[PORT_COUNT];
+        falling = new int[PORT_COUNT];
+        axes = new double[PORT_COUNT][MAX_AXES];
+        povs = new int[PORT_COUNT];
+        button_objs = new ArrayList<>();
+        program = new ButtonProgram();
+
+        for(int i = 0; i < PORT_COUNT; i++) povs[i] = -1;
+    }
+
+    /**
+     * Gets the input service instance
+     * @return  input service instance
+     */
+    public static InputService getInstance() {
+        if(instance == null) instance = new InputService();
+        return instance;
+    }
+
+    /**
+     * Registers a button to be latched every cycle. Called by the ButtonBase constructor.
+     * @param   button  button to latch
+     */
+    void register(ButtonBase button) {
+        button_objs.add(button);
+        is_compiled = false;
+    }
+
+    /**
+     * Checks if a joystick button is pressed this cycle
+     * @param   port    joystick port
+     * @param   button  button number starting at 1
+     * @return  true if the button is pressed
+     */
+    public boolean pressed(int port, int button) {
+        return (buttons[port] & (1 << (button - 1))) != 0;
+    }
+
+    /**
+     * Checks if a joystick button was pressed this cycle
+     * @param   port    joystick port
+     * @param   button  button number starting at 1
+     * @return  true if the button changed from released to pressed this cycle
+     */
+    public boolean risingEdge(int port, int button) {
+        return (rising[port] & (1 << (button - 1))) != 0;
+    }
+
+    /**
+     * Checks if a joystick button was released this cycle
+     * @param   port    joystick port
+     * @param   button  button number starting at 1
+     * @return  true if the button changed from pressed to released this cycle
+     */
+    public boolean fallingEdge(int port, int button) {
+        return (falling[port] & (1 << (button - 1))) != 0;
+    }
+
+    /**
+     * Gets the button bitmask of a joystick
+     * @param   port    joystick port
+     * @return  button bitmask. Bit 0 is button 1.
+     */
+    public int getButtons(int port) {
+        return buttons[port];
+    }
+
+    /**
+     * Gets a joystick axis value
+     * @param   port    joystick port
+     * @param   axis    axis index
+     * @return  axis value
+     */
+    public double getAxis(int port, int axis) {
+        return axes[port][axis];
+    }
+
+    /**
+     * Gets a joystick POV angle
+     * @param   port    joystick port
+     * @return  POV angle in degrees. -1 if not pressed.
+     */
+    public int getPOV(int port) {
+        return povs[port];
+    }
+
+    /**
+     * Periodic method. Samples all joysticks and latches all buttons. Subsystem periodic 
+     * methods run before commands, so commands see this cycle's inputs.
+     */
+    @Override
+    public void periodic() {
+        for(int port = 0; port < PORT_COUNT; port++) {
+            int state = DriverStation.getStickButtons(port);
+
+            rising[port] = state & ~prev_buttons[port];
+            falling[port] = ~state & prev_buttons[port];
+            prev_buttons[port] = state;
+            buttons[port] = state;
+
+            int axis_count = Math.min(MAX_AXES, DriverStation.getStickAxisCount(port));
+            for(int axis = 0; axis < axis_count; axis++) axes[port][axis] = DriverStation.getStickAxis(port, axis);
+            for(int axis = axis_count; axis < MAX_AXES; axis++) axes[port][axis] = 0;
+
+            povs[port] = DriverStation.getStickPOVCount(port) > 0 ? DriverStation.getStickPOV(port, 0) : -1;
+        }
+
+        // Latch all buttons. Recompile only when buttons were added.
+        if(!is_compiled) {
+            program.compile(button_objs);
+            is_compiled = true;
+        }
+
+        program.evaluate();
+    }
+}
@@ -46,6 +46,7 @@ public class JoystickAxisToButton extends ButtonBase {
         this.joystick = joystick;
         this.axis = axis;
         this.pressed_range = pressed_range;
+        this.invert = invert;
     }
 
     /**
@@ -105,11 +106,12 @@ public class JoystickAxisToButton extends ButtonBase {
 
 
     /**
-     * Checks if the button is pressed.
+     * Checks if the button is pressed. Reads the InputService joystick snapshot.
     * @return true if the button is considered pressed
     */
     @Override
     public boolean pressed() {
-        return pressed_range.inRange(joystick.getRawAxis(button));
+        double value = InputService.getInstance().getAxis(joystick.getPort(), axis);
+        return pressed_range.inRange(invert ? -value : value);
     }
 }
\ No newline at end of file
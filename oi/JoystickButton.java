@@ -29,6 +29,7 @@ import edu.wpi.first.wpilibj.Joystick;
  */
 public class JoystickButton extends ButtonBase {
     private Joystick joystick;  /**< Joystick the button is on */
+    private int port;           /**< Port of the joystick */
     private int button;         /**< Index of the button on the joystick */
 
     /**
@@ -38,16 +39,17 @@ public class JoystickButton extends ButtonBase {
      */
     public JoystickButton(Joystick joystick, int button) {
         this.joystick = joystick;
+        this.port = joystick.getPort();
         this.button = button;
     }
 
 
     /**
-     * Checks if the button is pressed.
+     * Checks if the button is pressed. Reads the InputService joystick snapshot.
      * @return true if the button is considered pressed
      */
     @Override
     public boolean pressed() {
-        return joystick.getRawButton(button);
+        return InputService.getInstance().pressed(port, button);
     }
 }
\ No newline at end of file
@@ -29,7 +29,7 @@
 /**
  * Manages a Joystick POV as a button
 */
-public class JoystickAxisToButton extends ButtonBase {
+public class JoystickPOVToButton extends ButtonBase {
     
     public enum Direction{
         UP(0),
@@ -56,17 +56,17 @@ public class JoystickAxisToButton extends ButtonBase {
     * @param   joystick        Joystick the button is on
     * @param   direction       POV direction
     */
-    public JoystickAxisToButton(Joystick joystick, Direction direction) {
+    public JoystickPOVToButton(Joystick joystick, Direction direction) {
         this.joystick = joystick;
-        this.axis = direction;
+        this.direction = direction;
     }
 
     /**
-     * Checks if the button is pressed.
+     * Checks if the button is pressed. Reads the InputService joystick snapshot.
     * @return true if the button is considered pressed
     */
     @Override
     public boolean pressed() {
-        return joystick.getPOV() == direction.value;
+        return InputService.getInstance().getPOV(joystick.getPort()) == direction.value;
     }
 }
\ No newline at end of file
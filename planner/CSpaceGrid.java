@@ -0,0 +1,231 @@
+/**
+ * Copyright 2024 Ryan Fitz-Gerald
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to 
+ * deal in the Software without restriction, including without limitation the 
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or 
+ * sell copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING 
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER 
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package frc.lib2960.planner;
+
+import java.io.*;
+
+import frc.lib2960.util.Limits;
+
+/**
+ * Uniform configuration space occupancy grid over several mechanism axes. Occupancy is stored 
+ * as a bitset with one bit per cell. The grid can be built from a CollisionChecker at startup 
+ * or saved to and loaded from a file.
+ */
+public class CSpaceGrid {
+    private static final int FILE_MAGIC = 0x32393630;   /**< Grid file identifier */
+
+    private final int axes;             /**< Number of axes */
+    private final int[] cells;          /**< Number of cells along each axis */
+    private final int[] strides;        /**< Cell index stride of each axis */
+    private final double[] lower;       /**< Lower bound of each axis */
+    private final double[] upper;       /**< Upper bound of each axis */
+    private final double[] cell_size;   /**< Cell size along each axis */
+    private final int cell_count;       /**< Total number of cells */
+    private final long[] bits;          /**< Occupancy bitset */
+
+    /**
+     * Constructor. All cells start free.
+     * @param   limits      range of each axis
+     * @param   resolution  number of cells along each axis
+     */
+    public CSpaceGrid(Limits[] limits, int[] resolution) {
+        axes = limits.length;
+        cells = new int[axes];
+        strides = new int[axes];
+        lower = new double[axes];
+        upper = new double[axes];
+        cell_size = new double[axes];
+
+        int count = 1;
+
+        for(int i = 0; i < axes; i++) {
+            cells[i] = resolution[i];
+            strides[i] = count;
+            lower[i] = limits[i].lower;
+            upper[i] = limits[i].upper;
+            cell_size[i] = (upper[i] - lower[i]) / cells[i];
+            count *= cells[i];
+        }
+
+        cell_count = count;
+        bits = new long[(count + 63) >> 6];
+    }
+
+    /**
+     * Marks every cell whose center collides as occupied
+     * @param   checker     collision checker
+     */
+    public void build(CollisionChecker checker) {
+        double[] config = new double[axes];
+
+        for(int i = 0; i < cell_count; i++) {
+            getCellCenter(i, config);
+            setOccupied(i, checker.collides(config));
+        }
+    }
+
+    /**
+     * Gets the number of axes
+     * @return  number of axes
+     */
+    public int getAxisCount() {
+        return axes;
+    }
+
+    /**
+     * Gets the total number of cells
+     * @return  total number of cells
+     */
+    public int getCellCount() {
+        return cell_count;
+    }
+
+    /**
+     * Gets the number of cells along an axis
+     * @param   axis    axis index
+     * @return  number of cells along the axis
+     */
+    public int getCells(int axis) {
+        return cells[axis];
+    }
+
+    /**
+     * Gets the cell size along an axis
+     * @param   axis    axis index
+     * @return  cell size along the axis
+     */
+    public double getCellSize(int axis) {
+        return cell_size[axis];
+    }
+
+    /**
+     * Gets the cell index stride of an axis
+     * @param   axis    axis index
+     * @return  cell index stride
+     */
+    public int getStride(int axis) {
+        return strides[axis];
+    }
+
+    /**
+     * Gets the coordinate of a cell along an axis
+     * @param   cell    cell index
+     * @param   axis    axis index
+     * @return  cell coordinate along the axis
+     */
+    public int getCoord(int cell, int axis) {
+        return (cell / strides[axis]) % cells[axis];
+    }
+
+    /**
+     * Checks if a cell is occupied
+     * @param   cell    cell index
+     * @return  true if the cell is occupied
+     */
+    public boolean isOccupied(int cell) {
+        return (bits[cell >> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * Sets the occupancy of a cell
+     * @param   cell        cell index
+     * @param   occupied    true if the cell is occupied
+     */
+    public void setOccupied(int cell, boolean occupied) {
+        if(occupied) {
+            bits[cell >> 6] |= 1L << cell;
+        } else {
+            bits[cell >> 6] &= ~(1L << cell);
+        }
+    }
+
+    /**
+     * Gets the cell containing a configuration. Configurations outside the grid are clamped to 
+     * the edge cells.
+     * @param   config  position of each axis
+     * @return  cell index
+     */
+    public int getCell(double[] config) {
+        int cell = 0;
+
+        for(int i = 0; i < axes; i++) {
+            int coord = (int)Math.floor((config[i] - lower[i]) / cell_size[i]);
+            coord = Math.max(0, Math.min(cells[i] - 1, coord));
+            cell += coord * strides[i];
+        }
+
+        return cell;
+    }
+
+    /**
+     * Gets the center configuration of a cell
+     * @param   cell    cell index
+     * @param   config  array to hold the position of each axis
+     */
+    public void getCellCenter(int cell, double[] config) {
+        for(int i = 0; i < axes; i++) {
+            config[i] = lower[i] + (getCoord(cell, i) + 0.5) * cell_size[i];
+        }
+    }
+
+    /**
+     * Saves the grid to a file
+     * @param   path    file path
+     * @throws  IOException if the file cannot be written
+     */
+    public void save(String path) throws IOException {
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(axes);
+
+            for(int i = 0; i < axes; i++) {
+                out.writeInt(cells[i]);
+                out.writeDouble(lower[i]);
+                out.writeDouble(upper[i]);
+            }
+
+            for(int i = 0; i < bits.length; i++) out.writeLong(bits[i]);
+        }
+    }
+
+    /**
+     * Loads the grid occupancy from a file saved with the same axis ranges and resolution
+     * @param   path    file path
+     * @throws  IOException if the file cannot be read or does not match this grid
+     */
+    public void load(String path) throws IOException {
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+            if(in.readInt() != FILE_MAGIC) throw new IOException("Not a configuration space grid file: " + path);
+            if(in.readInt() != axes) throw new IOException("Grid axis count does not match: " + path);
+
+            for(int i = 0; i < axes; i++) {
+                if(in.readInt() != cells[i] || in.readDouble() != lower[i] || in.readDouble() != upper[i]) {
+                    throw new IOException("Grid layout does not match: " + path);
+                }
+            }
+
+            for(int i = 0; i < bits.length; i++) bits[i] = in.readLong();
+        }
+    }
+}
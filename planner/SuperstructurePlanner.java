@@ -0,0 +1,611 @@
+/**
+ * Copyright 2024 Ryan Fitz-Gerald
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to 
+ * deal in the Software without restriction, including without limitation the 
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or 
+ * sell copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING 
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER 
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package frc.lib2960.planner;
+
+import java.util.Arrays;
+
+import frc.lib2960.subsystems.*;
+
+import edu.wpi.first.wpilibj2.command.*;
+
+/**
+ * Plans shortest time collision free paths for a set of coordinated mechanisms over a 
+ * configuration space grid using A*. Axes move together, so the time to cross between 
+ * neighboring cells is the slowest axis time at its maximum rate. Diagonal moves are only taken 
+ * when every axis aligned cell they pass is free, so paths do not cut the corners of obstacles. 
+ * Paths are cached per start cell and exact goal so repeated plans only cost a table lookup.
+ */
+public class SuperstructurePlanner {
+    /**
+     * Command to follow a planned path with a mechanism coordinator
+     */
+    public class FollowPathCommand extends Command {
+        private final SuperstructurePlanner planner;    /**< Planner object reference */
+        private final double[] goal;                    /**< Goal configuration */
+        private final double[] start;                   /**< Start configuration buffer */
+        private double[][] path = null;                 /**< Path being followed */
+        private int waypoint = 0;                       /**< Current waypoint index */
+
+        /**
+         * Constructor
+         * @param   planner     Planner object reference
+         * @param   goal        Goal configuration. Values are copied.
+         */
+        public FollowPathCommand(SuperstructurePlanner planner, double[] goal) {
+            this.planner = planner;
+            this.goal = goal.clone();
+            this.start = new double[goal.length];
+
+            addRequirements(planner.coordinator.getAxes());
+        }
+
+        /**
+         * Initialize Method. Plan from the current configuration.
+         */
+        @Override
+        public void initialize() {
+            MotorMechanismBase[] axes = planner.coordinator.getAxes();
+            for(int i = 0; i < axes.length; i++) start[i] = axes[i].getLatchedPosition();
+
+            path = planner.plan(start, goal);
+
+            if(path != null) {
+                waypoint = Math.min(1, path.length - 1);
+                planner.coordinator.begin(path[waypoint]);
+            }
+        }
+
+        /**
+         * Execute Method. Advance to the next waypoint once the current one is reached, or 
+         * early once all axes are near it and the straight move to the next waypoint is clear.
+         */
+        @Override
+        public void execute() {
+            if(path == null) return;
+
+            if(waypoint < path.length - 1) {
+                boolean can_advance = planner.coordinator.atTarget() || 
+                    (planner.nearWaypoint(path[waypoint]) && planner.segmentClear(path[waypoint + 1]));
+
+                if(can_advance) {
+                    waypoint++;
+                    planner.coordinator.begin(path[waypoint]);
+                }
+            }
+
+            planner.coordinator.update();
+        }
+
+        /**
+         * IsFinished method. End when the goal is reached or no path exists.
+         */
+        @Override
+        public boolean isFinished() {
+            return path == null || (waypoint == path.length - 1 && planner.coordinator.atTarget());
+        }
+
+        /**
+         * End method. Restore the axis profiles.
+         * @param   interrupted     true if the command was interrupted
+         */
+        @Override
+        public void end(boolean interrupted) {
+            planner.coordinator.finish();
+        }
+    }
+
+    private final CSpaceGrid grid;                      /**< Configuration space grid */
+    private final MechanismCoordinator coordinator;     /**< Coordinator for the planned axes */
+    private final int axes;                             /**< Number of axes */
+
+    // Neighbor moves
+    private final int[][] moves;                        /**< Coordinate change of each move */
+    private final double[] move_cost;                   /**< Time cost of each move */
+    private final int[][] move_corners;                 /**< Cell offsets a diagonal move passes that must be free */
+    private final double[] axis_time;                   /**< Time to cross one cell per axis */
+
+    // Search state. Preallocated and reused between plans.
+    private final double[] g_score;                     /**< Best known time to each cell */
+    private final int[] came_from;                      /**< Previous cell on the best path */
+    private final int[] visit_gen;                      /**< Search generation of each cell */
+    private final boolean[] closed;                     /**< Cell has been expanded */
+    private final int[] heap;                           /**< Open set binary heap of cells */
+    private final double[] heap_f;                      /**< Open set priority of each cell */
+    private final int[] heap_pos;                       /**< Heap position of each cell */
+    private final int[] coord;                          /**< Coordinate buffer */
+    private final int[] goal_coord;                     /**< Goal coordinate buffer */
+    private final double[] segment_point;               /**< Segment check configuration buffer */
+    private int heap_size = 0;                          /**< Open set size */
+    private int generation = 0;                         /**< Current search generation */
+
+    // Path cache
+    private final long[] cache_keys;                    /**< Cached start and goal cell pairs */
+    private final double[][] cache_goals;               /**< Cached exact goals */
+    private final double[][][] cache_paths;             /**< Cached paths */
+    private final int cache_mask;                       /**< Cache index mask */
+    private long cache_hits = 0;                        /**< Number of cache hits */
+    private long cache_misses = 0;                      /**< Number of cache misses */
+
+    /**
+     * Constructor
+     *      - cache_size is set to 1024
+     * @param   grid            Configuration space grid. Axes must be in the same order as the 
+     *                              coordinator axes.
+     * @param   coordinator     Coordinator for the planned axes
+     */
+    public SuperstructurePlanner(CSpaceGrid grid, MechanismCoordinator coordinator) {
+        this(grid, coordinator, 1024);
+    }
+
+    /**
+     * Constructor
+     * @param   grid            Configuration space grid. Axes must be in the same order as the 
+     *                              coordinator axes.
+     * @param   coordinator     Coordinator for the planned axes
+     * @param   cache_size      Number of cached paths. Rounded up to a power of 2.
+     */
+    public SuperstructurePlanner(CSpaceGrid grid, MechanismCoordinator coordinator, int cache_size) {
+        this.grid = grid;
+        this.coordinator = coordinator;
+        this.axes = grid.getAxisCount();
+
+        // Time for each axis to cross one cell at its maximum rate
+        MotorMechanismBase[] mechanisms = coordinator.getAxes();
+        axis_time = new double[axes];
+
+        for(int i = 0; i < axes; i++) {
+            axis_time[i] = grid.getCellSize(i) / mechanisms[i].pos_ctrl.settings.max_rate;
+        }
+
+        // Every combination of -1, 0, and 1 on each axis except no move
+        int move_count = 1;
+        for(int i = 0; i < axes; i++) move_count *= 3;
+        move_count--;
+
+        moves = new int[move_count][axes];
+        move_cost = new double[move_count];
+
+        for(int m = 0, code = 0; m < move_count; code++) {
+            int rem = code;
+            boolean is_zero = true;
+
+            for(int i = 0; i < axes; i++) {
+                moves[m][i] = rem % 3 - 1;
+                rem /= 3;
+                if(moves[m][i] != 0) is_zero = false;
+            }
+
+            if(is_zero) continue;
+
+            for(int i = 0; i < axes; i++) {
+                move_cost[m] = Math.max(move_cost[m], Math.abs(moves[m][i]) * axis_time[i]);
+            }
+
+            m++;
+        }
+
+        // Axis aligned cells passed by each diagonal move. Every partial combination of the 
+        // move's nonzero axes.
+        move_corners = new int[move_count][];
+
+        for(int m = 0; m < move_count; m++) {
+            int[] changed = new int[axes];
+            int changed_count = 0;
+
+            for(int i = 0; i < axes; i++) if(moves[m][i] != 0) changed[changed_count++] = i;
+
+            int corner_count = (1 << changed_count) - 2;
+            move_corners[m] = new int[Math.max(0, corner_count)];
+
+            for(int mask = 1; mask <= corner_count; mask++) {
+                int offset = 0;
+
+                for(int b = 0; b < changed_count; b++) {
+                    if((mask & (1 << b)) != 0) offset += moves[m][changed[b]] * grid.getStride(changed[b]);
+                }
+
+                move_corners[m][mask - 1] = offset;
+            }
+        }
+
+        int cells = grid.getCellCount();
+        g_score = new double[cells];
+        came_from = new int[cells];
+        visit_gen = new int[cells];
+        closed = new boolean[cells];
+        heap = new int[cells];
+        heap_f = new double[cells];
+        heap_pos = new int[cells];
+        coord = new int[axes];
+        goal_coord = new int[axes];
+        segment_point = new double[axes];
+
+        int size = Integer.highestOneBit(Math.max(1, cache_size - 1)) << 1;
+        cache_keys = new long[size];
+        cache_goals = new double[size][];
+        cache_paths = new double[size][][];
+        cache_mask = size - 1;
+
+        Arrays.fill(cache_keys, -1);
+    }
+
+    /**
+     * Creates a command that plans from the current configuration and follows the path
+     * @param   goal    goal configuration
+     * @return  follow path command
+     */
+    public FollowPathCommand getFollowPathCommand(double[] goal) {
+        return new FollowPathCommand(this, goal);
+    }
+
+    /**
+     * Plans a shortest time collision free path. The first waypoint is the start and the last 
+     * is the goal. Returned paths are shared with the cache and must not be modified. Cached 
+     * paths start at the center of the start cell. A plan to a different goal in the same goal 
+     * cell is searched again so the path always ends at the requested goal.
+     * @param   start   start configuration
+     * @param   goal    goal configuration
+     * @return  path waypoints. Null if the goal is occupied or unreachable.
+     */
+    public double[][] plan(double[] start, double[] goal) {
+        int start_cell = grid.getCell(start);
+        int goal_cell = grid.getCell(goal);
+
+        long key = (long)start_cell * grid.getCellCount() + goal_cell;
+        int slot = (int)(mix(key) & cache_mask);
+
+        if(cache_keys[slot] == key && Arrays.equals(cache_goals[slot], goal)) {
+            cache_hits++;
+            return cache_paths[slot];
+        }
+
+        cache_misses++;
+
+        double[][] path = search(start_cell, goal_cell, goal);
+
+        cache_keys[slot] = key;
+        cache_goals[slot] = goal.clone();
+        cache_paths[slot] = path;
+
+        return path;
+    }
+
+    /**
+     * Clears the path cache. Call after the grid changes.
+     */
+    public void clearCache() {
+        Arrays.fill(cache_keys, -1);
+        Arrays.fill(cache_goals, null);
+        Arrays.fill(cache_paths, null);
+    }
+
+    /**
+     * Gets the number of plans answered from the cache
+     * @return  number of cache hits
+     */
+    public long getCacheHits() {
+        return cache_hits;
+    }
+
+    /**
+     * Gets the number of plans that required a search
+     * @return  number of cache misses
+     */
+    public long getCacheMisses() {
+        return cache_misses;
+    }
+
+    /**
+     * Checks if all axes are within one cell of a waypoint
+     * @param   waypoint    waypoint configuration
+     * @return  true if all axes are near the waypoint
+     */
+    private boolean nearWaypoint(double[] waypoint) {
+        MotorMechanismBase[] mechanisms = coordinator.getAxes();
+
+        for(int i = 0; i < axes; i++) {
+            if(Math.abs(mechanisms[i].getLatchedPosition() - waypoint[i]) > grid.getCellSize(i)) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks the straight move from the current configuration to a waypoint against the grid. 
+     * The segment is sampled every quarter cell so it cannot pass a corner cell unchecked.
+     * @param   waypoint    waypoint configuration
+     * @return  true if no sample along the segment is in an occupied cell
+     */
+    private boolean segmentClear(double[] waypoint) {
+        MotorMechanismBase[] mechanisms = coordinator.getAxes();
+
+        double cells = 0;
+        for(int i = 0; i < axes; i++) {
+            double dist = Math.abs(waypoint[i] - mechanisms[i].getLatchedPosition());
+            cells = Math.max(cells, dist / grid.getCellSize(i));
+        }
+
+        int samples = (int)Math.ceil(cells * 4);
+
+        for(int k = 0; k <= samples; k++) {
+            double t = samples > 0 ? (double)k / samples : 1;
+
+            for(int i = 0; i < axes; i++) {
+                double from = mechanisms[i].getLatchedPosition();
+                segment_point[i] = from + (waypoint[i] - from) * t;
+            }
+
+            if(grid.isOccupied(grid.getCell(segment_point))) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Runs A* between two cells
+     * @param   start_cell  start cell index
+     * @param   goal_cell   goal cell index
+     * @param   goal        goal configuration
+     * @return  path waypoints. Null if the goal is occupied or unreachable.
+     */
+    private double[][] search(int start_cell, int goal_cell, double[] goal) {
+        if(grid.isOccupied(goal_cell)) return null;
+
+        generation++;
+        heap_size = 0;
+
+        for(int i = 0; i < axes; i++) goal_coord[i] = grid.getCoord(goal_cell, i);
+
+        visit(start_cell, 0, -1);
+        push(start_cell, heuristic(start_cell));
+
+        while(heap_size > 0) {
+            int cell = pop();
+            if(cell == goal_cell) return buildPath(goal_cell, goal);
+
+            closed[cell] = true;
+
+            for(int i = 0; i < axes; i++) coord[i] = grid.getCoord(cell, i);
+
+            for(int m = 0; m < moves.length; m++) {
+                // Bounds check and neighbor index
+                int next = cell;
+                boolean in_bounds = true;
+
+                for(int i = 0; i < axes; i++) {
+                    int c = coord[i] + moves[m][i];
+                    if(c < 0 || c >= grid.getCells(i)) {
+                        in_bounds = false;
+                        break;
+                    }
+                    next += moves[m][i] * grid.getStride(i);
+                }
+
+                if(!in_bounds || grid.isOccupied(next) || cutsCorner(cell, m)) continue;
+
+                double score = g_score[cell] + move_cost[m];
+
+                if(visit_gen[next] != generation) {
+                    visit(next, score, cell);
+                    push(next, score + heuristic(next));
+                } else if(!closed[next] && score < g_score[next]) {
+                    g_score[next] = score;
+                    came_from[next] = cell;
+                    decrease(next, score + heuristic(next));
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Checks if a diagonal move passes an occupied axis aligned cell. The move must be in 
+     * bounds, so the cells it passes are too.
+     * @param   cell    cell the move starts from
+     * @param   move    move index
+     * @return  true if any cell the move passes is occupied
+     */
+    private boolean cutsCorner(int cell, int move) {
+        int[] corners = move_corners[move];
+
+        for(int i = 0; i < corners.length; i++) {
+            if(grid.isOccupied(cell + corners[i])) return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Marks a cell as visited in the current search
+     * @param   cell    cell index
+     * @param   score   time to reach the cell
+     * @param   from    previous cell
+     */
+    private void visit(int cell, double score, int from) {
+        visit_gen[cell] = generation;
+        g_score[cell] = score;
+        came_from[cell] = from;
+        closed[cell] = false;
+        heap_pos[cell] = -1;
+    }
+
+    /**
+     * Admissible estimate of the time from a cell to the goal. Axes move together so the time 
+     * is set by the slowest axis.
+     * @param   cell    cell index
+     * @return  estimated time to the goal
+     */
+    private double heuristic(int cell) {
+        double time = 0;
+
+        for(int i = 0; i < axes; i++) {
+            time = Math.max(time, Math.abs(grid.getCoord(cell, i) - goal_coord[i]) * axis_time[i]);
+        }
+
+        return time;
+    }
+
+    /**
+     * Builds the path ending at the goal, dropping intermediate cells where the direction of 
+     * travel does not change
+     * @param   goal_cell   goal cell index
+     * @param   goal        goal configuration
+     * @return  path waypoints
+     */
+    private double[][] buildPath(int goal_cell, double[] goal) {
+        // Count direction changes
+        int count = 1;
+        int prev_dir = 0;
+
+        for(int cell = goal_cell; came_from[cell] >= 0; cell = came_from[cell]) {
+            int dir = cell - came_from[cell];
+            if(dir != prev_dir) count++;
+            prev_dir = dir;
+        }
+
+        double[][] path = new double[count][axes];
+
+        // Fill from the goal back to the start
+        int index = count - 1;
+        for(int i = 0; i < axes; i++) path[index][i] = goal[i];
+
+        prev_dir = 0;
+
+        for(int cell = goal_cell; came_from[cell] >= 0; cell = came_from[cell]) {
+            int dir = cell - came_from[cell];
+
+            if(dir != prev_dir && prev_dir != 0) {
+                index--;
+                grid.getCellCenter(cell, path[index]);
+            }
+
+            prev_dir = dir;
+        }
+
+        // Start cell
+        if(index > 0) {
+            int start_cell = goal_cell;
+            while(came_from[start_cell] >= 0) start_cell = came_from[start_cell];
+            grid.getCellCenter(start_cell, path[0]);
+        }
+
+        return path;
+    }
+
+    /**
+     * Adds a cell to the open set
+     * @param   cell    cell index
+     * @param   f       cell priority
+     */
+    private void push(int cell, double f) {
+        heap_f[cell] = f;
+        heap[heap_size] = cell;
+        heap_pos[cell] = heap_size;
+        heap_size++;
+        siftUp(heap_size - 1);
+    }
+
+    /**
+     * Lowers the priority of a cell in the open set
+     * @param   cell    cell index
+     * @param   f       new cell priority
+     */
+    private void decrease(int cell, double f) {
+        heap_f[cell] = f;
+        siftUp(heap_pos[cell]);
+    }
+
+    /**
+     * Removes the lowest priority cell from the open set
+     * @return  cell index
+     */
+    private int pop() {
+        int top = heap[0];
+        heap_size--;
+
+        if(heap_size > 0) {
+            heap[0] = heap[heap_size];
+            heap_pos[heap[0]] = 0;
+            siftDown(0);
+        }
+
+        heap_pos[top] = -1;
+        return top;
+    }
+
+    /**
+     * Moves a heap entry up to its position
+     * @param   pos     heap position
+     */
+    private void siftUp(int pos) {
+        int cell = heap[pos];
+
+        while(pos > 0) {
+            int parent = (pos - 1) >> 1;
+            if(heap_f[heap[parent]] <= heap_f[cell]) break;
+
+            heap[pos] = heap[parent];
+            heap_pos[heap[pos]] = pos;
+            pos = parent;
+        }
+
+        heap[pos] = cell;
+        heap_pos[cell] = pos;
+    }
+
+    /**
+     * Moves a heap entry down to its position
+     * @param   pos     heap position
+     */
+    private void siftDown(int pos) {
+        int cell = heap[pos];
+
+        while(true) {
+            int child = 2 * pos + 1;
+            if(child >= heap_size) break;
+            if(child + 1 < heap_size && heap_f[heap[child + 1]] < heap_f[heap[child]]) child++;
+            if(heap_f[cell] <= heap_f[heap[child]]) break;
+
+            heap[pos] = heap[child];
+            heap_pos[heap[pos]] = pos;
+            pos = child;
+        }
+
+        heap[pos] = cell;
+        heap_pos[cell] = pos;
+    }
+
+    /**
+     * Hashes a cache key
+     * @param   key     start and goal cell pair
+     * @return  hashed key
+     */
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return key;
+    }
+}
@@ -20,7 +20,7 @@
  * DEALINGS IN THE SOFTWARE.
  */
 
-package ftc.lib2960.subsystems;
+package frc.lib2960.subsystems;
 
 import frc.lib2960.util.*;
 import frc.lib2960.controllers.*;
@@ -29,7 +29,8 @@ import edu.wpi.first.math.VecBuilder;
 import edu.wpi.first.math.Vector;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
-import edu.wpi.first.wpilibj2.command.SubSystemBase;
+import edu.wpi.first.math.numbers.N3;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.networktables.GenericEntry;
 
@@ -38,11 +39,11 @@ import edu.wpi.first.math.estimator.DifferentialDrivePoseEstimator;
 /**
  * Base class for a differential drivetrain
  */
-public class DiffDriveBase extends SubSystemBase implements Drivetrain {
+public class DiffDriveBase extends SubsystemBase implements Drivetrain {
     /**
      * Differential Drivetrain settings
      */
-    public class Settings {
+    public static class Settings {
         // TODO Add appropriate settings
     }
 
@@ -67,6 +68,17 @@ public class DiffDriveBase extends SubSystemBase implements Drivetrain {
         return new Pose2d();
     }
 
+    /**
+     * Gets the estimated pose at a past timestamp. Pose history is not implemented yet so the 
+     * current estimated pose is returned.
+     * @param   timestamp   FPGA timestamp in seconds
+     * @return  current estimated pose
+     */
+    public Pose2d getPoseAt(double timestamp) {
+        // TODO Implement pose history
+        return getEstimatedPos();
+    }
+
     public void resetPoseEst(Pose2d new_pose) {
         // TODO Implement
     }
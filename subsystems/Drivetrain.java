@@ -20,12 +20,13 @@
  * DEALINGS IN THE SOFTWARE.
  */
 
-package ftc.lib2960.subsystems;
+package frc.lib2960.subsystems;
 
 import edu.wpi.first.math.VecBuilder;
 import edu.wpi.first.math.Vector;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.numbers.N3;
 
 /**
  * Interface for all drivetrain objects
@@ -34,7 +35,29 @@ public interface Drivetrain {
     public void setRobotRelativeSpeeds(ChassisSpeeds speeds);
     public ChassisSpeeds getRobotRelativeSpeeds();
     public Pose2d getEstimatedPos(); 
+
+    /**
+     * Gets the estimated robot pose at a past time
+     * @param   timestamp   FPGA timestamp in seconds
+     * @return  estimated robot pose at the timestamp
+     */
+    public Pose2d getPoseAt(double timestamp);
     public void resetPoseEst(Pose2d new_pose);
+
+    /**
+     * Adds a new vision pose update. Implementations must be safe to call from any thread and 
+     * must not block the caller.
+     * @param pose          Estimated pose from the vision
+     * @param time_stamp    Timestamp of when the pose was captured
+     */
     public void addVisionPose(Pose2d pose, double time_stamp);
+
+    /**
+     * Adds a new vision pose update. Implementations must be safe to call from any thread and 
+     * must not block the caller.
+     * @param pose          Estimated pose from the vision
+     * @param time_stamp    Timestamp of when the pose was captured
+     * @param std_dev       Standard deviation values to use for the pose estimation
+     */
     public void addVisionPose(Pose2d pose, double time_stamp, Vector<N3> std_dev);
 }
\ No newline at end of file
@@ -0,0 +1,208 @@
+/**
+ * Copyright 2024 Ryan Fitz-Gerald
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to 
+ * deal in the Software without restriction, including without limitation the 
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or 
+ * sell copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING 
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER 
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package frc.lib2960.subsystems;
+
+import edu.wpi.first.wpilibj2.command.*;
+
+/**
+ * Moves several motor mechanisms together so all axes arrive at their targets at the same 
+ * time. The profile time of each axis is estimated from its PositionController settings and 
+ * the faster axes are slowed to match the slowest one by scaling their profiles in time.
+ */
+public class MechanismCoordinator {
+    /**
+     * Coordinated move command
+     */
+    public class CoordinatedMoveCommand extends Command {
+        private final MechanismCoordinator coordinator; /**< Coordinator object reference */
+
+        /**
+         * Constructor
+         * @param   coordinator     Coordinator object reference
+         */
+        public CoordinatedMoveCommand(MechanismCoordinator coordinator) {
+            this.coordinator = coordinator;
+
+            addRequirements(coordinator.axes);
+        }
+
+        /**
+         * Initialize Method. Synchronize the axis profiles.
+         */
+        @Override
+        public void initialize() {
+            coordinator.synchronize();
+        }
+
+        /**
+         * Execute Method. Update all axes.
+         */
+        @Override
+        public void execute() {
+            coordinator.update();
+        }
+
+        /**
+         * IsFinished method. End when all axes are at target.
+         */
+        @Override
+        public boolean isFinished() {
+            return coordinator.atTarget();
+        }
+
+        /**
+         * End method. Restore the axis profiles.
+         * @param   interrupted     true if the command was interrupted
+         */
+        @Override
+        public void end(boolean interrupted) {
+            coordinator.finish();
+        }
+    }
+
+    private final MotorMechanismBase[] axes;        /**< Coordinated mechanisms */
+    private final double[] targets;                 /**< Target position of each axis */
+    private final double[] profile_times;           /**< Unscaled profile time of each axis */
+    private double move_time = 0;                   /**< Synchronized move time in seconds */
+
+    public final CoordinatedMoveCommand move_cmd;   /**< Internal coordinated move command */
+
+    /**
+     * Constructor
+     * @param   axes    Mechanisms to coordinate
+     */
+    public MechanismCoordinator(MotorMechanismBase... axes) {
+        this.axes = axes;
+        this.targets = new double[axes.length];
+        this.profile_times = new double[axes.length];
+
+        for(int i = 0; i < axes.length; i++) targets[i] = axes[i].getLatchedPosition();
+
+        move_cmd = new CoordinatedMoveCommand(this);
+    }
+
+    /**
+     * Gets the number of coordinated axes
+     * @return  number of coordinated axes
+     */
+    public int getAxisCount() {
+        return axes.length;
+    }
+
+    /**
+     * Sets the target of one axis. Takes effect at the next move.
+     * @param   axis    axis index
+     * @param   target  target position
+     */
+    public void setTarget(int axis, double target) {
+        targets[axis] = target;
+    }
+
+    /**
+     * Starts a synchronized move without scheduling the internal command. For use by commands 
+     * that require all coordinated axes. Call update() every cycle and finish() when done.
+     * @param   targets     target position of each axis. Values are copied.
+     */
+    public void begin(double[] targets) {
+        for(int i = 0; i < axes.length; i++) this.targets[i] = targets[i];
+        synchronize();
+    }
+
+    /**
+     * Gets the coordinated mechanisms
+     * @return  coordinated mechanisms
+     */
+    public MotorMechanismBase[] getAxes() {
+        return axes;
+    }
+
+    /**
+     * Moves all axes to new targets. Restarts the synchronization if a move is running.
+     * @param   targets     target position of each axis. Values are copied.
+     */
+    public void moveTo(double[] targets) {
+        for(int i = 0; i < axes.length; i++) this.targets[i] = targets[i];
+
+        if(move_cmd.isScheduled()) {
+            synchronize();
+        } else {
+            move_cmd.schedule();
+        }
+    }
+
+    /**
+     * Gets the synchronized move time of the current move
+     * @return  synchronized move time in seconds
+     */
+    public double getMoveTime() {
+        return move_time;
+    }
+
+    /**
+     * Checks if all axes are at their targets using each mechanism's default tolerance
+     * @return  true if all axes are at target
+     */
+    public boolean atTarget() {
+        for(int i = 0; i < axes.length; i++) {
+            double error = axes[i].getLatchedPosition() - targets[i];
+            if(!axes[i].settings.def_tol.inRange(error)) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Computes each axis profile time and scales the profiles so all axes take as long as the 
+     * slowest axis. Profile changes run on each axis fast control loop thread if it is enabled.
+     */
+    private void synchronize() {
+        move_time = 0;
+
+        for(int i = 0; i < axes.length; i++) {
+            profile_times[i] = axes[i].pos_ctrl.getProfileTime(axes[i].getLatchedPosition(), targets[i]);
+            move_time = Math.max(move_time, profile_times[i]);
+        }
+
+        for(int i = 0; i < axes.length; i++) {
+            double scale = move_time > 0 ? profile_times[i] / move_time : 1;
+
+            axes[i].restartProfile(scale);
+            axes[i].handoff();
+        }
+    }
+
+    /**
+     * Updates all axes
+     */
+    public void update() {
+        for(int i = 0; i < axes.length; i++) axes[i].updatePosition(targets[i]);
+    }
+
+    /**
+     * Restores all axis profiles to full speed
+     */
+    public void finish() {
+        for(int i = 0; i < axes.length; i++) axes[i].restartProfile(1);
+    }
+}
@@ -29,6 +29,13 @@ import edu.wpi.first.math.geometry.*;
 import edu.wpi.first.wpilibj2.command.*;
 import edu.wpi.first.math.kinematics.*;
 import edu.wpi.first.networktables.*;
+import edu.wpi.first.wpilibj.shuffleboard.*;
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.Timer;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Base class for motorized mechanisms such as Arm joints, Elevators, Turrets, and Angle 
@@ -39,8 +46,7 @@ public abstract class MotorMechanismBase extends SubsystemBase {
     /**
      * Motor Mechanism Settings
      */
-    public class Settings {
-        // TODO Allow RateControl Feed Forward settings to change for dynamic loads
+    public static class Settings {
         // TODO allow soft limits to change
         public final String name;                           /**< Mechanism Name */
         public final String tab_name;                       /**< ShuffleBoard tab name */
@@ -62,7 +68,7 @@ public abstract class MotorMechanismBase extends SubsystemBase {
          *                          "at target"
          */
         public Settings(String name, String tab_name, PositionController.Settings pos_ctrl, 
-                        RateController.Settings[] rate_ctrls, Limits[] soft_limits, Limit def_tol) {
+                        RateController.Settings[] rate_ctrls, Limits[] soft_limits, Limits def_tol) {
             this.name = name;
             this.tab_name = tab_name;
             this.pos_ctrl = pos_ctrl;
@@ -87,7 +93,7 @@ public abstract class MotorMechanismBase extends SubsystemBase {
          */
         public HoldPositionCommand(MotorMechanismBase mechanism) {
             this.mechanism = mechanism;
-            target = mechanism.getPosition();
+            target = mechanism.getLatchedPosition();
 
             addRequirements(mechanism);
         }
@@ -97,7 +103,9 @@ public abstract class MotorMechanismBase extends SubsystemBase {
          */
         @Override
         public void initialize() {
-            target = mechanism.getPosition();
+            target = mechanism.getLatchedPosition();
+            mechanism.pos_ctrl.reset();
+            mechanism.handoff();
         }
 
         /**
@@ -105,7 +113,9 @@ public abstract class MotorMechanismBase extends SubsystemBase {
          */
         @Override
         public void execute() {
-            mechanism.getPosTrackingRate(target);
+            mechanism.command_probe.start();
+            mechanism.updatePosition(target);
+            mechanism.command_probe.stop();
         }
     }
 
@@ -133,7 +143,9 @@ public abstract class MotorMechanismBase extends SubsystemBase {
          */
         @Override
         public void execute() {
+            mechanism.command_probe.start();
             mechanism.updateVoltage(target_voltage);
+            mechanism.command_probe.stop();
         }
 
         /**
@@ -164,12 +176,22 @@ public abstract class MotorMechanismBase extends SubsystemBase {
             addRequirements(mechanism);
         }
 
+        /**
+         * Initialize Method. Seed the rate controller from the current output.
+         */
+        @Override
+        public void initialize() {
+            mechanism.handoff();
+        }
+
         /**
          * Execute Method. Update mechanism rate
          */
         @Override
         public void execute() {
+            mechanism.command_probe.start();
             mechanism.updateRate(target_rate);
+            mechanism.command_probe.stop();
         }
 
         /**
@@ -223,11 +245,13 @@ public abstract class MotorMechanismBase extends SubsystemBase {
          * @param   tol             Acceptable distance from target position to consider mechanism
          *                              "at target"
          */
-        public SetPositionCommand(MotorMechanismBase mechanism, double target, double tol) {
+        public SetPositionCommand(MotorMechanismBase mechanism, double target, Limits tol) {
             this.mechanism = mechanism;
             this.target = target;
             this.tol = tol;
             this.auto_complete = true;
+
+            addRequirements(mechanism);
         }
         /**
          * Constructor
@@ -242,6 +266,8 @@ public abstract class MotorMechanismBase extends SubsystemBase {
             this.target = target;
             this.tol = mechanism.settings.def_tol;
             this.auto_complete = auto_complete;
+
+            addRequirements(mechanism);
         }
 
         /**
@@ -253,11 +279,22 @@ public abstract class MotorMechanismBase extends SubsystemBase {
          * @param   auto_complete   Command automatically finishes when "at target" if true. 
          *                              Continues indefinitely if false.  
          */
-        public SetPositionCommand(MotorMechanismBase mechanism, double target, double tol, boolean auto_complete) {
+        public SetPositionCommand(MotorMechanismBase mechanism, double target, Limits tol, boolean auto_complete) {
             this.mechanism = mechanism;
             this.target = target;
             this.tol = tol;
             this.auto_complete = auto_complete;
+
+            addRequirements(mechanism);
+        }
+
+        /**
+         * Initialize Method. Reset the position profile.
+         */
+        @Override
+        public void initialize() {
+            mechanism.pos_ctrl.reset();
+            mechanism.handoff();
         }
 
         /**
@@ -265,8 +302,9 @@ public abstract class MotorMechanismBase extends SubsystemBase {
          */
         @Override
         public void execute() {
-            double target_rate = mechanism.getPosTrackingRate(target);
-            mechanism.setRate(target_rate);
+            mechanism.command_probe.start();
+            mechanism.updatePosition(target);
+            mechanism.command_probe.stop();
         }
 
         /**
@@ -274,10 +312,7 @@ public abstract class MotorMechanismBase extends SubsystemBase {
          */
         @Override
         public boolean isFinished() {
-            double current_pos = mechanism.getPosition();
-            double error = current_pos - target;
-            
-            return auto_complete && atTarget() && mechanism.atLimit();
+            return auto_complete && atTarget();
         }
 
         /**
@@ -293,7 +328,7 @@ public abstract class MotorMechanismBase extends SubsystemBase {
          * @return  true if mechanism is at the target position
          */
         public boolean atTarget() {
-            return tol.inRange(error);
+            return tol.inRange(mechanism.getLatchedPosition() - target);
         }
     }
     
@@ -302,7 +337,7 @@ public abstract class MotorMechanismBase extends SubsystemBase {
 
     public final PositionController pos_ctrl;       /**< Position Controller */
     public final RateController[] rate_ctrls;       /**< Rate Controller */
-    public int cur_rate_ctrl;                       /**< Current rate controller index */
+    public volatile int cur_rate_ctrl;              /**< Current rate controller index */
 
     public int cur_soft_limits;                     /**< Current soft limit index */
 
@@ -314,16 +349,55 @@ public abstract class MotorMechanismBase extends SubsystemBase {
     // ShuffleBoard
     protected final ShuffleboardLayout sb_layout;
 
-    private GenericEntry sb_position;
-    private GenericEntry sb_rate;
-    
-    private GenericEntry[] sb_voltages;
-    private GenericEntry[] sb_currents;
-
-    private GenericEntry sb_atLowerLimitSensor;
-    private GenericEntry sb_atLowerSoftLimit;
-    private GenericEntry sb_atUpperLimitSensor;
-    private GenericEntry sb_atUpperSoftLimit;
+    // Telemetry
+    private static final int TLM_POSITION = 0;
+    private static final int TLM_RATE = 1;
+    private static final int TLM_LOWER_LIMIT_SENSOR = 2;
+    private static final int TLM_LOWER_SOFT_LIMIT = 3;
+    private static final int TLM_UPPER_LIMIT_SENSOR = 4;
+    private static final int TLM_UPPER_SOFT_LIMIT = 5;
+    private static final int TLM_HW_READS = 6;
+    private static final int TLM_MOTORS = 7;            /**< First motor field. Voltage and 
+                                                             current alternate per motor. */
+
+    private final TelemetryGroup telemetry;         /**< Mechanism telemetry group */
+
+    // Loop Timing
+    private final LoopProfiler.Probe periodic_probe;    /**< Periodic method timing probe */
+    private final LoopProfiler.Probe ui_probe;          /**< updateUI timing probe */
+    private final LoopProfiler.Probe command_probe;     /**< Internal command timing probe */
+
+    // Fast Control Loop
+    private static final int SETPOINT_NONE = 0;
+    private static final int SETPOINT_VOLTAGE = 1;
+    private static final int SETPOINT_RATE = 2;
+    private static final int SETPOINT_POSITION = 3;
+    private static final long NO_PROFILE = Double.doubleToLongBits(-1);   /**< No pending profile restart */
+
+    private FastControlLoop fast_loop = null;           /**< Fast control loop. Null if disabled. */
+    private final SetpointSlot setpoint;                /**< Fast control loop setpoint */
+    private final double[] fast_setpoint;               /**< Fast control loop setpoint buffer */
+    private final AtomicBoolean handoff_pending = new AtomicBoolean();      /**< Fast control loop handoff request */
+    private final AtomicInteger rate_ctrl_pending = new AtomicInteger(-1);  /**< Fast control loop rate controller switch request. -1 if none. */
+    private final AtomicLong profile_pending = new AtomicLong(NO_PROFILE);  /**< Fast control loop profile restart time scale bits. NO_PROFILE if none. */
+
+    private double last_voltage = 0;                    /**< Last voltage applied to the motors */
+
+    private boolean braking_envelope = false;           /**< Limit rate to stop at soft limits */
+    private boolean is_voltage_braking = false;         /**< Braking envelope is overriding a commanded voltage */
+
+    private final PowerBudget.Consumer power;           /**< Current budget consumer */
+
+    // Sensor Snapshot
+    private double snap_position;                   /**< Latched mechanism position */
+    private double snap_rate;                       /**< Latched mechanism rate */
+    private final double[] snap_voltages;           /**< Latched motor voltages */
+    private final double[] snap_currents;           /**< Latched motor currents */
+    private boolean snap_lower_sensor;              /**< Latched lower limit sensor state */
+    private boolean snap_upper_sensor;              /**< Latched upper limit sensor state */
+    private double snap_timestamp;                  /**< Time the snapshot was taken in seconds */
+    private int hw_reads;                           /**< Hardware reads over the last cycle */
+    private final AtomicInteger hw_read_count = new AtomicInteger();  /**< Hardware reads since the last snapshot */
 
     /**
      * Constructor
@@ -348,32 +422,51 @@ public abstract class MotorMechanismBase extends SubsystemBase {
         // Initialize Soft Limits
         cur_soft_limits = 0;
 
+        // Initialize Fast Control Loop
+        setpoint = new SetpointSlot();
+        fast_setpoint = new double[2];
+
+        // Initialize Loop Timing
+        periodic_probe = LoopProfiler.getInstance().register(settings.name + " periodic");
+        ui_probe = LoopProfiler.getInstance().register(settings.name + " updateUI");
+        command_probe = LoopProfiler.getInstance().register(settings.name + " command");
+
+        // Initialize Power Budget
+        power = PowerBudget.getInstance().register(settings.name, PowerBudget.PRIORITY_NORMAL);
+
+        // Initialize Sensor Snapshot
+        snap_voltages = new double[motor_count];
+        snap_currents = new double[motor_count];
+        updateSnapshot();
+
         // Initialize ShuffleBoard
         sb_layout = Shuffleboard.getTab(settings.tab_name)
             .getLayout(settings.name, BuiltInLayouts.kList)
             .withSize(1, 4);
 
-        sb_position = layout.add("Position", getPosition()).getEntry();
-        sb_rate = layout.add("Rate", getRate()).getEntry();
-
-        sb_voltages = new GenericEntry[motor_count];
-        sb_currents = new GenericEntry[motor_count];
+        // Initialize Telemetry
+        String[] fields = new String[TLM_MOTORS + 2 * motor_count];
+        fields[TLM_POSITION] = "Position";
+        fields[TLM_RATE] = "Rate";
+        fields[TLM_LOWER_LIMIT_SENSOR] = "At Lower Limit Sensor";
+        fields[TLM_LOWER_SOFT_LIMIT] = "At Lower Soft Limit";
+        fields[TLM_UPPER_LIMIT_SENSOR] = "At Upper Limit Sensor";
+        fields[TLM_UPPER_SOFT_LIMIT] = "At Upper Soft Limit";
+        fields[TLM_HW_READS] = "Hardware Reads";
 
-        for(i = 0; i < motor_count; i++) {
-            sb_voltages[i] = layout.add("Motor " + i + " Voltage", getVoltage(i)).getEntry();
-            sb_currents[i] = layout.add("Motor " + i + " Current", getCurrent(i)).getEntry();
+        for(int i = 0; i < motor_count; i++) {
+            fields[TLM_MOTORS + 2 * i] = "Motor " + i + " Voltage";
+            fields[TLM_MOTORS + 2 * i + 1] = "Motor " + i + " Current";
         }
 
-        sb_atLowerLimitSensor = layout.add("Position", atLowerLimitSensor()).getEntry();
-        sb_atLowerSoftLimit = layout.add("Position", atLowerSoftLimit()).getEntry();
-        sb_atUpperLimitSensor = layout.add("Position", atUpperLimitSensor()).getEntry();
-        sb_atUpperSoftLimit = layout.add("Position", atUpperSoftLimit()).getEntry();
+        telemetry = TelemetryRegistry.getInstance()
+            .register(settings.tab_name + "/" + settings.name, fields);
 
         // Initialize commands
         hold_pos_cmd = new HoldPositionCommand(this);
-        set_voltage_cmd = new SetVoltageCommand(this);
+        set_voltage_cmd = new SetVoltageCommand(this, 0);
         set_rate_cmd = new SetRateCommand(this, 0);
-        set_pos_cmd = new SetPositionCommand(this, getPosition(), false);
+        set_pos_cmd = new SetPositionCommand(this, getLatchedPosition(), false);
 
         // Set Default Command
         setDefaultCommand(hold_pos_cmd);
@@ -400,6 +493,65 @@ public abstract class MotorMechanismBase extends SubsystemBase {
         return cur_soft_limits;
     }
 
+    /**
+     * Get the mechanism position latched at the start of the cycle
+     * @return  latched mechanism position
+     */
+    public double getLatchedPosition() {
+        return snap_position;
+    }
+
+    /**
+     * Get the mechanism rate latched at the start of the cycle
+     * @return  latched mechanism rate
+     */
+    public double getLatchedRate() {
+        return snap_rate;
+    }
+
+    /**
+     * Get a motor voltage latched at the start of the cycle
+     * @param   motor   motor index
+     * @return  latched motor voltage
+     */
+    public double getLatchedVoltage(int motor) {
+        return snap_voltages[motor];
+    }
+
+    /**
+     * Get a motor current latched at the start of the cycle
+     * @param   motor   motor index
+     * @return  latched motor current
+     */
+    public double getLatchedCurrent(int motor) {
+        return snap_currents[motor];
+    }
+
+    /**
+     * Get the time the sensor snapshot was taken
+     * @return  snapshot FPGA timestamp in seconds
+     */
+    public double getSnapshotTime() {
+        return snap_timestamp;
+    }
+
+    /**
+     * Get the number of hardware reads made by the mechanism over the last main loop cycle. 
+     * Counts the sensor snapshot and the fast control loop reads.
+     * @return  number of hardware reads
+     */
+    public int getHardwareReads() {
+        return hw_reads;
+    }
+
+    /**
+     * Gets the current budget consumer for the mechanism. Used to change its priority.
+     * @return  current budget consumer
+     */
+    public PowerBudget.Consumer getPowerConsumer() {
+        return power;
+    }
+
     /**
      * Get the current soft limits
      * @return  current soft limits
@@ -413,8 +565,7 @@ public abstract class MotorMechanismBase extends SubsystemBase {
      * @return  true if at limit
      */
     public boolean atLowerSoftLimit() {
-        
-        return !settings.is_cont && getSoftLimits().inLower(getPosition());
+        return atLowerSoftLimit(snap_position);
     }
 
     /**
@@ -422,7 +573,7 @@ public abstract class MotorMechanismBase extends SubsystemBase {
      * @return  true if at limit
      */
     public boolean atUpperSoftLimit() {
-        return !settings.is_cont && getSoftLimits().inUpper(getPosition());;
+        return atUpperSoftLimit(snap_position);
     }
 
     /**
@@ -430,7 +581,7 @@ public abstract class MotorMechanismBase extends SubsystemBase {
      * @return  true if at limit
      */
     public boolean atSoftLimit() {
-        return getSoftLimits().inRange(getPosition());
+        return atLowerSoftLimit() || atUpperSoftLimit();
     }
 
     /**
@@ -438,7 +589,7 @@ public abstract class MotorMechanismBase extends SubsystemBase {
      * @return  true if at limit
      */
     public boolean atLimitSensor() {
-        return atLowerLimitSensor() || atUpperLimitSensor();
+        return snap_lower_sensor || snap_upper_sensor;
     }
 
     /**
@@ -446,7 +597,7 @@ public abstract class MotorMechanismBase extends SubsystemBase {
      * @return  true if at limit
      */
     public boolean atLowerLimit() {
-        return atLowerSoftLimit() || atLowerLimitSensor();
+        return atLowerSoftLimit() || snap_lower_sensor;
     }
 
     /**
@@ -454,7 +605,7 @@ public abstract class MotorMechanismBase extends SubsystemBase {
      * @return  true if at limit
      */
     public boolean atUpperLimit() {
-        return atUpperSoftLimit() || atUpperLimitSensor();
+        return atUpperSoftLimit() || snap_upper_sensor;
     }
 
     /**
@@ -462,7 +613,7 @@ public abstract class MotorMechanismBase extends SubsystemBase {
      * @return  true if at limit
      */
     public boolean atLimit() {
-        return atLowerLimitSwitch();
+        return atLowerLimit() || atUpperLimit();
     }
 
     /**
@@ -487,11 +638,93 @@ public abstract class MotorMechanismBase extends SubsystemBase {
 
     /**
      * Selects the active rate controller. If selected rate controller does not exist, nothing 
-     * changes.
+     * changes. Runs on the fast control loop thread if it is enabled.
      * @param   index   new rate controller index
      */
     public void setRateCtrlIndex(int index) {
-        if(0 <= index && index < rate_ctrls.length) cur_rate_ctrl = index;
+        if(0 <= index && index < rate_ctrls.length) {
+            if(fast_loop != null) {
+                rate_ctrl_pending.set(index);
+                return;
+            }
+
+            switchRateCtrl(index);
+        }
+    }
+
+    /**
+     * Sets a gain schedule for a rate controller. Gains are interpolated from the mechanism 
+     * position and load every cycle.
+     * @param   index       rate controller index
+     * @param   schedule    gain schedule. Null to return to the configured gains.
+     */
+    public void setGainSchedule(int index, GainSchedule schedule) {
+        rate_ctrls[index].setGainSchedule(schedule);
+    }
+
+    /**
+     * Sets the load parameter used by the rate controller gain schedules
+     * @param   load    current mechanism load
+     */
+    public void setLoad(double load) {
+        for(int i = 0; i < rate_ctrls.length; i++) rate_ctrls[i].setLoad(load);
+    }
+
+    /**
+     * Runs the position and rate controllers on a dedicated periodic thread instead of in the 
+     * command execute methods. Commands hand their setpoints to the thread through a lock free 
+     * slot. Position, rate and the limit sensors are read directly from the hardware each fast 
+     * loop cycle and limits are checked against those reads. getPosition(), getRate(), 
+     * atLowerLimitSensor(), atUpperLimitSensor() and setMotorVoltage() must be safe to call 
+     * from another thread when this is enabled.
+     * The controller update periods are set to the loop period while it runs.
+     * @param   period  fast loop period in seconds
+     */
+    public void enableFastLoop(double period) {
+        disableFastLoop();
+
+        setControlPeriod(period, period);
+        setpoint.write(SETPOINT_NONE, 0);
+        fast_loop = new FastControlLoop(settings.name + " Control", this::updateFastLoop, period);
+        fast_loop.start();
+    }
+
+    /**
+     * Stops the fast control loop. Controllers return to running in the command execute methods.
+     */
+    public void disableFastLoop() {
+        if(fast_loop != null) {
+            fast_loop.close();
+            fast_loop = null;
+        }
+
+        // Apply a rate controller switch and profile restart the fast loop did not get to
+        int pending = rate_ctrl_pending.getAndSet(-1);
+        if(pending >= 0) switchRateCtrl(pending);
+
+        long time_scale = profile_pending.getAndSet(NO_PROFILE);
+        if(time_scale != NO_PROFILE) applyRestartProfile(Double.longBitsToDouble(time_scale));
+
+        setControlPeriod(settings.pos_ctrl.period, TimedRobot.kDefaultPeriod);
+    }
+
+    /**
+     * Gets the fast control loop for access to its timing statistics
+     * @return  fast control loop. Null if the fast loop is disabled.
+     */
+    public FastControlLoop getFastLoop() {
+        return fast_loop;
+    }
+
+    /**
+     * Enables or disables the braking envelope. When enabled, the target rate is limited so 
+     * the mechanism can stop at the active soft limits using the position controller max_decel. 
+     * Commanded voltages toward a limit are replaced by the rate controller output for the 
+     * braking rate once the mechanism is too fast to stop. Disabled by default.
+     * @param   enabled     true to enable the braking envelope
+     */
+    public void setBrakingEnvelope(boolean enabled) {
+        this.braking_envelope = enabled;
     }
 
     /**
@@ -499,7 +732,7 @@ public abstract class MotorMechanismBase extends SubsystemBase {
      * @param   index   new soft limit index index
      */
     public void setSoftLimitIndex(int index) {
-        if(0 <= index && index < soft_limits.size()) cur_soft_limits = index;
+        if(0 <= index && index < settings.soft_limits.length) cur_soft_limits = index;
     }
 
     /**
@@ -539,7 +772,7 @@ public abstract class MotorMechanismBase extends SubsystemBase {
      */
     public void holdPosition() {
         Command current_cmd = getCurrentCommand();
-        if(current_cmd != getDefaultCommand()) cur_command.cancel();
+        if(current_cmd != null && current_cmd != getDefaultCommand()) current_cmd.cancel();
     }
 
     
@@ -562,7 +795,7 @@ public abstract class MotorMechanismBase extends SubsystemBase {
      * @param   tolerance   distance from the target position that is considered "at target"
      * @return  set position command
      */
-    public SetPositionCommand getSetPositionCommand(double target, Limit tolerance) {
+    public SetPositionCommand getSetPositionCommand(double target, Limits tolerance) {
         return new SetPositionCommand(this, target, tolerance);
     }   
 
@@ -583,7 +816,7 @@ public abstract class MotorMechanismBase extends SubsystemBase {
      * @param   auto_complete   If true, command automatically finishes when atTarget is true.
      * @return  set position command
      */
-    public SetPositionCommand getSetPositionCommand(double target, Limit tolerance, boolean auto_complete) {
+    public SetPositionCommand getSetPositionCommand(double target, Limits tolerance, boolean auto_complete) {
         return new SetPositionCommand(this, target, tolerance, auto_complete);
     }   
 
@@ -597,10 +830,50 @@ public abstract class MotorMechanismBase extends SubsystemBase {
      * @return  rate to reach the desired position
      */
     protected double getPosTrackingRate(double target_pos) {
-        double current_pos = getPosition();
-        double current_rate = getRate();
+        return getPosTrackingRate(snap_position, snap_rate, target_pos);
+    }
 
-        return pos_ctrl.update(current_pos, current_rate, target_pos);
+    /**
+     * Seeds the active rate controller from the last applied voltage so the next output 
+     * continues smoothly. Called when a rate controlled command starts. The target rate is 
+     * assumed to start at the current rate. Runs on the fast control loop thread if it is 
+     * enabled.
+     */
+    protected void handoff() {
+        if(fast_loop != null) {
+            handoff_pending.set(true);
+            return;
+        }
+
+        seedRateCtrl(snap_position, snap_rate);
+    }
+
+    /**
+     * Restarts the position profile with a new time scale. The next position update seeds the 
+     * profile from the current rate. Runs on the fast control loop thread if it is enabled.
+     * @param   time_scale  profile time scale between 0 and 1
+     */
+    protected void restartProfile(double time_scale) {
+        if(fast_loop != null) {
+            profile_pending.set(Double.doubleToLongBits(time_scale));
+            return;
+        }
+
+        applyRestartProfile(time_scale);
+    }
+
+    /**
+     * Updates the motor output to reach the target position
+     * @param   target_pos  target position
+     */
+    protected void updatePosition(double target_pos) {
+        if(fast_loop != null) {
+            setpoint.write(SETPOINT_POSITION, target_pos);
+            return;
+        }
+
+        double target_rate = getPosTrackingRate(target_pos);
+        applyRate(snap_position, snap_rate, target_rate, pos_ctrl.getTargetAccel(), atLowerLimit(), atUpperLimit());
     }
 
     /**
@@ -608,28 +881,311 @@ public abstract class MotorMechanismBase extends SubsystemBase {
      * @param   target_rate     target rate
      */
     protected void updateRate(double target_rate) {
-        double current_pos = getPosition();
-        double current_rate = getRate();
+        if(fast_loop != null) {
+            setpoint.write(SETPOINT_RATE, target_rate);
+            return;
+        }
+
+        applyRate(snap_position, snap_rate, target_rate, 0, atLowerLimit(), atUpperLimit());
+    }
 
+    /**
+     * Updates the motor output voltage
+     * @param   voltage     target voltage
+     */
+    protected void updateVoltage(double voltage) {
+        if(fast_loop != null) {
+            setpoint.write(SETPOINT_VOLTAGE, voltage);
+            return;
+        }
+
+        applyVoltage(limitVoltage(snap_position, snap_rate, voltage), atLowerLimit(), atUpperLimit());
+    }
+
+    /**************************/
+    /* Private Control Methods */
+    /**************************/
+
+    /**
+     * Calculates the rate to reach the target position
+     * @param   current_pos     current position
+     * @param   current_rate    current rate
+     * @param   target_pos      target position
+     * @return  rate to reach the desired position
+     */
+    private double getPosTrackingRate(double current_pos, double current_rate, double target_pos) {
+        return pos_ctrl.update(current_pos, current_rate, target_pos);
+    }
+
+    /**
+     * Sets the update period of the position and rate controllers
+     * @param   pos_period      position controller update period in seconds
+     * @param   rate_period     rate controller update period in seconds
+     */
+    private void setControlPeriod(double pos_period, double rate_period) {
+        pos_ctrl.setPeriod(pos_period);
+        for(int i = 0; i < rate_ctrls.length; i++) rate_ctrls[i].setPeriod(rate_period);
+    }
+
+    /**
+     * Switches the active rate controller. The new controller is seeded from the old one so 
+     * the output does not jump.
+     * @param   index   new rate controller index
+     */
+    private void switchRateCtrl(int index) {
+        if(index == cur_rate_ctrl) return;
+
+        rate_ctrls[index].transferFrom(rate_ctrls[cur_rate_ctrl]);
+        cur_rate_ctrl = index;
+    }
+
+    /**
+     * Sets the position profile time scale and resets the profile
+     * @param   time_scale  profile time scale between 0 and 1
+     */
+    private void applyRestartProfile(double time_scale) {
+        pos_ctrl.setTimeScale(time_scale);
+        pos_ctrl.reset();
+    }
+
+    /**
+     * Checks a position against the lower soft limit
+     * @param   position    mechanism position
+     * @return  true if at limit
+     */
+    private boolean atLowerSoftLimit(double position) {
+        return !settings.pos_ctrl.is_cont && !getSoftLimits().inLower(position);
+    }
+
+    /**
+     * Checks a position against the upper soft limit
+     * @param   position    mechanism position
+     * @return  true if at limit
+     */
+    private boolean atUpperSoftLimit(double position) {
+        return !settings.pos_ctrl.is_cont && !getSoftLimits().inUpper(position);
+    }
+
+    /**
+     * Seeds the active rate controller from the last applied voltage
+     * @param   current_pos     current position
+     * @param   current_rate    current rate
+     */
+    private void seedRateCtrl(double current_pos, double current_rate) {
+        rate_ctrls[cur_rate_ctrl].seed(last_voltage, current_pos, current_rate, current_rate, 0);
+    }
+
+    /**
+     * Runs the rate controller and applies its output
+     * @param   current_pos     current position
+     * @param   current_rate    current rate
+     * @param   target_rate     target rate
+     * @param   target_accel    target acceleration
+     * @param   at_lower        true if the mechanism is at a lower limit
+     * @param   at_upper        true if the mechanism is at an upper limit
+     */
+    private void applyRate(double current_pos, double current_rate, double target_rate, double target_accel, 
+                           boolean at_lower, boolean at_upper) {
         // Set target rate to 0 if it would cause the mechanism to go out of range
         if(!pos_ctrl.settings.is_cont) {
-            if(atLowerLimit() && target_rate < 0) target_rate = 0;
-            if(atUpperLimit() && target_rate > 0) target_rate = 0;
+            if(at_lower && target_rate < 0) target_rate = 0;
+            if(at_upper && target_rate > 0) target_rate = 0;
+
+            if(braking_envelope) {
+                double upper_rate = getBrakingRate(getSoftLimits().upper - current_pos, current_rate);
+                double lower_rate = getBrakingRate(current_pos - getSoftLimits().lower, -current_rate);
+
+                if(target_rate > upper_rate) {
+                    target_rate = upper_rate;
+                    target_accel = 0;
+                }
+
+                if(target_rate < -lower_rate) {
+                    target_rate = -lower_rate;
+                    target_accel = 0;
+                }
+            }
         }
         
-        updateVoltage(rate_ctrls[cur_rate_ctrl].update(current_pos, current_rate, target_rate));
+        RateController rate_ctrl = rate_ctrls[cur_rate_ctrl];
+        applyVoltage(rate_ctrl.update(current_pos, current_rate, target_rate, target_accel), at_lower, at_upper);
+
+        // The mechanism does not follow the feedforward model while held at a limit
+        if(!at_lower && !at_upper) {
+            rate_ctrl.updateEstimator(last_voltage);
+        } else {
+            rate_ctrl.skipEstimatorSample();
+        }
     }
 
-    protected void updateVoltage(double voltage) {
+    /**
+     * Calculates the fastest rate toward a limit from which the mechanism can still stop at the 
+     * limit using the position controller max_decel. Allows for one cycle of travel at the 
+     * current rate before braking starts.
+     * @param   distance        distance to the limit
+     * @param   rate_toward     current rate toward the limit
+     * @return  maximum rate toward the limit
+     */
+    private double getBrakingRate(double distance, double rate_toward) {
+        if(rate_toward > 0) distance -= rate_toward * pos_ctrl.getPeriod();
+        if(distance <= 0) return 0;
+
+        return Math.sqrt(2 * pos_ctrl.settings.max_decel * distance);
+    }
+
+    /**
+     * Brakes toward a soft limit when the voltage is commanded directly. Once the mechanism is 
+     * moving toward a limit faster than the braking rate, the active rate controller drives it 
+     * down to the braking rate and its output replaces the commanded voltage whenever it pushes 
+     * less toward the limit. The rate controller is seeded from the last applied voltage when 
+     * braking starts.
+     * @param   current_pos     current position
+     * @param   current_rate    current rate
+     * @param   voltage         target voltage
+     * @return  limited voltage
+     */
+    private double limitVoltage(double current_pos, double current_rate, double voltage) {
+        if(!braking_envelope || pos_ctrl.settings.is_cont) return voltage;
+
+        double upper_rate = getBrakingRate(getSoftLimits().upper - current_pos, current_rate);
+        double lower_rate = getBrakingRate(current_pos - getSoftLimits().lower, -current_rate);
+
+        double braking_rate;
+        if(voltage > 0 && current_rate > upper_rate) {
+            braking_rate = upper_rate;
+        } else if(voltage < 0 && current_rate < -lower_rate) {
+            braking_rate = -lower_rate;
+        } else {
+            is_voltage_braking = false;
+            return voltage;
+        }
+
+        if(!is_voltage_braking) {
+            seedRateCtrl(current_pos, current_rate);
+            is_voltage_braking = true;
+        }
+
+        double braking_voltage = rate_ctrls[cur_rate_ctrl].update(current_pos, current_rate, braking_rate, 0);
+
+        return voltage > 0 ? Math.min(voltage, braking_voltage) : Math.max(voltage, braking_voltage);
+    }
+
+    /**
+     * Applies a voltage to the motors
+     * @param   voltage     target voltage
+     * @param   at_lower    true if the mechanism is at a lower limit
+     * @param   at_upper    true if the mechanism is at an upper limit
+     */
+    private void applyVoltage(double voltage, boolean at_lower, boolean at_upper) {
         // Set voltage to zero if it would cause the mechanism to go out of range
         if(!pos_ctrl.settings.is_cont) {
-            if(atLowerLimit() && voltage < 0) voltage = 0;
-            if(atUpperLimit() && voltage > 0) voltage = 0;
+            if(at_lower && voltage < 0) voltage = 0;
+            if(at_upper && voltage > 0) voltage = 0;
         }
 
+        // Scale by the current budget
+        voltage *= power.getScale();
+
+        last_voltage = voltage;
         setMotorVoltage(voltage);
     }
 
+    /**
+     * Runs one fast control loop cycle. Called by the fast control loop thread.
+     */
+    private void updateFastLoop() {
+        int mode = setpoint.read(fast_setpoint);
+        if(mode == SETPOINT_NONE) return;
+
+        double current_pos = readPosition();
+        double current_rate = readRate();
+
+        // Check limits against this cycle's reads rather than the main loop snapshot
+        boolean at_lower = readLowerLimitSensor() || atLowerSoftLimit(current_pos);
+        boolean at_upper = readUpperLimitSensor() || atUpperSoftLimit(current_pos);
+
+        int pending = rate_ctrl_pending.getAndSet(-1);
+        if(pending >= 0) switchRateCtrl(pending);
+
+        long time_scale = profile_pending.getAndSet(NO_PROFILE);
+        if(time_scale != NO_PROFILE) applyRestartProfile(Double.longBitsToDouble(time_scale));
+
+        if(handoff_pending.getAndSet(false)) seedRateCtrl(current_pos, current_rate);
+
+        switch(mode) {
+            case SETPOINT_POSITION:
+                double target_rate = getPosTrackingRate(current_pos, current_rate, fast_setpoint[0]);
+                applyRate(current_pos, current_rate, target_rate, pos_ctrl.getTargetAccel(), at_lower, at_upper);
+                break;
+            case SETPOINT_RATE:
+                applyRate(current_pos, current_rate, fast_setpoint[0], 0, at_lower, at_upper);
+                break;
+            case SETPOINT_VOLTAGE:
+                applyVoltage(limitVoltage(current_pos, current_rate, fast_setpoint[0]), at_lower, at_upper);
+                break;
+        }
+    }
+
+    /****************************/
+    /* Counted Hardware Reads */
+    /****************************/
+
+    /**
+     * Reads the mechanism position from the hardware and counts the read
+     * @return  mechanism position
+     */
+    private double readPosition() {
+        hw_read_count.incrementAndGet();
+        return getPosition();
+    }
+
+    /**
+     * Reads the mechanism rate from the hardware and counts the read
+     * @return  mechanism rate
+     */
+    private double readRate() {
+        hw_read_count.incrementAndGet();
+        return getRate();
+    }
+
+    /**
+     * Reads a motor voltage from the hardware and counts the read
+     * @param   motor   motor index
+     * @return  motor voltage
+     */
+    private double readMotorVoltage(int motor) {
+        hw_read_count.incrementAndGet();
+        return getMotorVoltage(motor);
+    }
+
+    /**
+     * Reads a motor current from the hardware and counts the read
+     * @param   motor   motor index
+     * @return  motor current
+     */
+    private double readMotorCurrent(int motor) {
+        hw_read_count.incrementAndGet();
+        return getMotorCurrent(motor);
+    }
+
+    /**
+     * Reads the lower limit sensor from the hardware and counts the read
+     * @return  true if the lower limit sensor is active
+     */
+    private boolean readLowerLimitSensor() {
+        hw_read_count.incrementAndGet();
+        return atLowerLimitSensor();
+    }
+
+    /**
+     * Reads the upper limit sensor from the hardware and counts the read
+     * @return  true if the upper limit sensor is active
+     */
+    private boolean readUpperLimitSensor() {
+        hw_read_count.incrementAndGet();
+        return atUpperLimitSensor();
+    }
+
     /****************************/
     /* Protected Access Methods */
     /****************************/
@@ -647,34 +1203,72 @@ public abstract class MotorMechanismBase extends SubsystemBase {
     /*********************/
 
     public void periodic() {
+        periodic_probe.start();
+
+        updateSnapshot();
+
+        ui_probe.start();
         updateUI();
+        ui_probe.stop();
+
+        periodic_probe.stop();
     }
 
     /***************************/
     /* Periodic Helper Methods */
     /***************************/
+
+    /**
+     * Reads all mechanism sensors once and latches the values for the rest of the cycle. Called 
+     * at the start of the periodic method so commands run this cycle see the same values.
+     */
+    public void updateSnapshot() {
+        // Publish the reads made since the last snapshot, including this cycle's fast loop reads
+        hw_reads = hw_read_count.getAndSet(0);
+
+        snap_timestamp = Timer.getFPGATimestamp();
+        snap_position = readPosition();
+        snap_rate = readRate();
+
+        double total_current = 0;
+
+        for(int i = 0; i < motor_count; i++) {
+            snap_voltages[i] = readMotorVoltage(i);
+            snap_currents[i] = readMotorCurrent(i);
+            total_current += Math.abs(snap_currents[i]);
+        }
+
+        power.reportCurrent(total_current);
+
+        snap_lower_sensor = readLowerLimitSensor();
+        snap_upper_sensor = readUpperLimitSensor();
+    }
+
     public void updateUI() {
-        sb_position.setDouble(getPosition());
-        sb_rate.setDouble(getRate());
+        telemetry.set(TLM_POSITION, snap_position);
+        telemetry.set(TLM_RATE, snap_rate);
 
         for(int i = 0; i < motor_count; i++) {
-            sb_voltages[i].setDouble(getMotorVoltage(i));
-            sb_currents[i].setDouble(getMotorCurrent(i));
+            telemetry.set(TLM_MOTORS + 2 * i, snap_voltages[i]);
+            telemetry.set(TLM_MOTORS + 2 * i + 1, snap_currents[i]);
         }
         
-        sb_atLowerLimitSensor.setBoolean(atLowerLimitSensor());
-        sb_atLowerSoftLimit.setBoolean(atLowerSoftLimit());
-        sb_atUpperLimitSensor.setBoolean(atUpperLimitSensor());
-        sb_atUpperSoftLimit.setBoolean(atUpperSoftLimit());
+        telemetry.set(TLM_LOWER_LIMIT_SENSOR, snap_lower_sensor);
+        telemetry.set(TLM_LOWER_SOFT_LIMIT, atLowerSoftLimit());
+        telemetry.set(TLM_UPPER_LIMIT_SENSOR, snap_upper_sensor);
+        telemetry.set(TLM_UPPER_SOFT_LIMIT, atUpperSoftLimit());
+        telemetry.set(TLM_HW_READS, hw_reads);
     }
 
     /********************/
     /* Abstract Methods */
     /********************/
+
+    // Hardware reads. Use the latched snapshot values within a cycle.
     public abstract double getPosition();
     public abstract double getRate();
-    public abstract double getMotorVoltage();
-    public abstract double getMotorCurrent();
+    public abstract double getMotorVoltage(int motor);
+    public abstract double getMotorCurrent(int motor);
 
     public boolean atLowerLimitSensor() { return false; }
     public boolean atUpperLimitSensor() { return false; }
@@ -24,11 +24,12 @@
 
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import edu.wpi.first.wpilibj.PneumaticsHub;
-import edu.wpi.first.wpilibj.shuffleboard.BuiltInLayouts;
-import edu.wpi.first.wpilibj.shuffleboard.Shuffleboard;
-import edu.wpi.first.networktables.GenericEntry;
 
 import frc.robot.Constants;
+import frc.lib2960.util.LoopProfiler;
+import frc.lib2960.util.PowerBudget;
+import frc.lib2960.util.TelemetryGroup;
+import frc.lib2960.util.TelemetryRegistry;
 
 /**
  * Manages a REV Pneumatics Hub
@@ -38,7 +39,7 @@ public class Pneumatics_RevPH extends SubsystemBase {
     /**
      * REV Pneumatics Hub settings
      */
-    public class Settings {
+    public static class Settings {
         public static final String DEF_NAME = "Pneumatics Hub";
         public static final int DEF_CAN_ID = 1;
 
@@ -84,9 +85,16 @@ public class Pneumatics_RevPH extends SubsystemBase {
     
     private final PneumaticsHub ph;      /**< Module objet reference*/
 
-    // ShuffleBoard
-    private GenericEntry sb_pressure;   
-    private GenericEntry sb_current;
+    private boolean compressor_enabled = false;     /**< Requested compressor state */
+    private boolean compressor_running = false;     /**< Current compressor state */
+    private final PowerBudget.Consumer power;       /**< Compressor current budget consumer */
+    private final LoopProfiler.Probe periodic_probe;    /**< Periodic method timing probe */
+
+    // Telemetry
+    private static final int TLM_PRESSURE = 0;
+    private static final int TLM_CURRENT = 1;
+
+    private final TelemetryGroup telemetry;  /**< Module telemetry group */
 
     /**
      * Constructor. Settings set to default values;
@@ -107,22 +115,45 @@ public class Pneumatics_RevPH extends SubsystemBase {
         // Create PneumaticsHub
         ph = PneumaticsHub(settings.can_id);
 
-        // Setup ShuffleBoard
-        var layout = Shuffleboard.getTab("Status")
-                .getLayout(settings.name, BuiltInLayouts.kList)
-                .withSize(1, 2);
-        sb_pressure = layout.add("Pressure", 0).getEntry();
-        sb_current = layout.add("Current", 0).getEntry();
+        // Initialize Loop Timing
+        periodic_probe = LoopProfiler.getInstance().register(settings.name + " periodic");
+
+        // Register with the power budget
+        power = PowerBudget.getInstance().register(settings.name + " Compressor", PowerBudget.PRIORITY_LOW);
+
+        // Setup Telemetry
+        telemetry = TelemetryRegistry.getInstance()
+                .register("Status/" + settings.name, "Pressure", "Current");
 
         // Set Compressor Enabled
         steEnabled(enabled);
     }
 
     /**
-     * Enables/Disables the compressor
+     * Enables/Disables the compressor. An enabled compressor is stopped while the power budget 
+     * limits it.
      * @param   enabled     true to enable the compressor, false to disable.
      */
     public void enableCompressor(boolean enabled) {
+        compressor_enabled = enabled;
+        applyCompressor(enabled && power.getScale() >= 1);
+    }
+
+    /**
+     * Gets the compressor current budget consumer. Used to change its priority.
+     * @return  compressor current budget consumer
+     */
+    public PowerBudget.Consumer getPowerConsumer() {
+        return power;
+    }
+
+    /**
+     * Starts or stops the compressor
+     * @param   enabled     true to run the compressor, false to stop it.
+     */
+    private void applyCompressor(boolean enabled) {
+        compressor_running = enabled;
+
         if(enabled) {
             switch(settings.control_mode) {
                 case ControlMode.DIGITAL:
@@ -141,18 +172,33 @@ public class Pneumatics_RevPH extends SubsystemBase {
     }
 
     /**
-     * Periodic method. Updates UI.
+     * Periodic method. Applies the power budget and updates UI.
      */
     @Override
     public void periodic() {
+        periodic_probe.start();
+
+        // The compressor can not be scaled. Stop it while limited, holding its running demand 
+        // so it is not restarted until the budget can serve it.
+        boolean run = compressor_enabled && power.getScale() >= 1;
+        if(run != compressor_running) applyCompressor(run);
+
+        if(compressor_enabled && !run) {
+            power.holdDemand();
+        } else {
+            power.reportCurrent(ph.getCompressorCurrent());
+        }
+
         updateUI();
+
+        periodic_probe.stop();
     }
 
     /**
-     * Updates ShuffleBoard
+     * Updates telemetry
      */
     public void updateUI() {
-        sb_pressure.setDouble(compressor.getPressure(0));
-        sb_current.setDouble(ph.getCompressorCurrent());
+        telemetry.set(TLM_PRESSURE, ph.getPressure(0));
+        telemetry.set(TLM_CURRENT, ph.getCompressorCurrent());
     }
 }
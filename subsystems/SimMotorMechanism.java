@@ -0,0 +1,270 @@
+/**
+ * Copyright 2024 Ryan Fitz-Gerald
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to 
+ * deal in the Software without restriction, including without limitation the 
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or 
+ * sell copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING 
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER 
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package frc.lib2960.subsystems;
+
+import frc.lib2960.util.*;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.Nat;
+import edu.wpi.first.math.Pair;
+import edu.wpi.first.math.numbers.*;
+import edu.wpi.first.math.system.Discretization;
+import edu.wpi.first.math.system.LinearSystem;
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.math.system.plant.LinearSystemId;
+import edu.wpi.first.wpilibj.TimedRobot;
+
+/**
+ * Simulated motor mechanism. The plant is the feedforward model 
+ * 
+ *      V = kS * sign(v) + kV * v + kA * a + kG * g(x)
+ * 
+ * built from an FFParam, so the same gains used to control a mechanism can be used to 
+ * simulate it. SIMPLE parameters simulate a flywheel, ELEVATOR parameters add a constant 
+ * gravity load and ARM parameters add a gravity load that scales with cos(position) in 
+ * radians. The kV/kA dynamics come from LinearSystemId and are discretized once for a fixed 
+ * step, so each step is a handful of operations and the simulation can run many times faster 
+ * than real time. kS and kG are applied as voltage disturbances.
+ */
+public class SimMotorMechanism extends MotorMechanismBase {
+    private final FFParam plant;        /**< Plant parameters */
+    private final DCMotor motor;        /**< Motor model used for current draw */
+    private final double motor_ratio;   /**< Motor radians per mechanism distance unit */
+    private final Limits hard_limits;   /**< Hard stops. Null if the mechanism is unbounded. */
+    private final double step_period;   /**< Fixed integrator step in seconds */
+
+    // Discretized kV/kA dynamics
+    private final double a00, a01, a10, a11;    /**< Discrete system matrix */
+    private final double b0, b1;                /**< Discrete input matrix */
+    private final boolean is_first_order;       /**< True if kA is 0 and the rate follows the 
+                                                     voltage instantly */
+
+    private double bus_voltage = 12;    /**< Simulated bus voltage */
+    private double duty_nominal = 0;    /**< Nominal voltage commands are a duty cycle against. 0 
+                                             if commands are voltages. */
+    private double position = 0;        /**< Simulated position */
+    private double rate = 0;            /**< Simulated rate */
+    private double voltage = 0;         /**< Commanded voltage */
+    private double current = 0;         /**< Simulated current draw */
+    private double sim_time = 0;        /**< Simulated time in seconds */
+
+    /**
+     * Constructor
+     *      - step_period is set to 0.001
+     * @param   settings        Mechanism settings
+     * @param   plant           Plant feedforward parameters
+     * @param   motor           Motor model, including the number of motors
+     * @param   motor_ratio     Motor radians per mechanism distance unit
+     * @param   hard_limits     Hard stops. Null if the mechanism is unbounded.
+     */
+    public SimMotorMechanism(Settings settings, FFParam plant, DCMotor motor, double motor_ratio, 
+                             Limits hard_limits) {
+        this(settings, plant, motor, motor_ratio, hard_limits, 0.001);
+    }
+
+    /**
+     * Constructor
+     * @param   settings        Mechanism settings
+     * @param   plant           Plant feedforward parameters
+     * @param   motor           Motor model, including the number of motors
+     * @param   motor_ratio     Motor radians per mechanism distance unit
+     * @param   hard_limits     Hard stops. Null if the mechanism is unbounded.
+     * @param   step_period     Fixed integrator step in seconds
+     */
+    public SimMotorMechanism(Settings settings, FFParam plant, DCMotor motor, double motor_ratio, 
+                             Limits hard_limits, double step_period) {
+        super(settings, 1);
+
+        this.plant = plant;
+        this.motor = motor;
+        this.motor_ratio = motor_ratio;
+        this.hard_limits = hard_limits;
+        this.step_period = step_period;
+
+        is_first_order = plant.kA <= 0;
+
+        if(is_first_order) {
+            a00 = 1; a01 = 0; a10 = 0; a11 = 0;
+            b0 = 0; b1 = 0;
+        } else {
+            LinearSystem<N2, N1, N2> system = LinearSystemId.identifyPositionSystem(plant.kV, plant.kA);
+            Pair<Matrix<N2, N2>, Matrix<N2, N1>> discrete = 
+                Discretization.discretizeAB(system.getA(), system.getB(), step_period);
+
+            Matrix<N2, N2> a = discrete.getFirst();
+            Matrix<N2, N1> b = discrete.getSecond();
+
+            a00 = a.get(0, 0); a01 = a.get(0, 1);
+            a10 = a.get(1, 0); a11 = a.get(1, 1);
+            b0 = b.get(0, 0); b1 = b.get(1, 0);
+        }
+
+        updateSnapshot();
+    }
+
+    /**
+     * Sets the simulated state
+     * @param   position    simulated position
+     * @param   rate        simulated rate
+     */
+    public void setState(double position, double rate) {
+        this.position = position;
+        this.rate = rate;
+    }
+
+    /**
+     * Sets the simulated bus voltage. Commanded voltage is clamped to the bus voltage.
+     * @param   bus_voltage     simulated bus voltage in volts
+     */
+    public void setBusVoltage(double bus_voltage) {
+        this.bus_voltage = bus_voltage;
+    }
+
+    /**
+     * Treats commanded voltages as a duty cycle against a nominal bus voltage, like a motor 
+     * output that is not voltage compensated. The delivered voltage then falls with the bus.
+     * @param   nominal_voltage     nominal bus voltage. 0 to deliver the commanded voltage.
+     */
+    public void setDutyCycleOutput(double nominal_voltage) {
+        this.duty_nominal = nominal_voltage;
+    }
+
+    /**
+     * Gets the simulated time
+     * @return  simulated time in seconds
+     */
+    public double getSimTime() {
+        return sim_time;
+    }
+
+    /**
+     * Gets the fixed integrator step
+     * @return  fixed integrator step in seconds
+     */
+    public double getStepPeriod() {
+        return step_period;
+    }
+
+    /**
+     * Advances the simulation by one fixed step
+     */
+    public void step() {
+        double applied = getAppliedVoltage();
+
+        // Gravity load
+        double drive = applied;
+        if(plant.type == FFParam.FFType.ELEVATOR) drive -= plant.kG;
+        if(plant.type == FFParam.FFType.ARM) drive -= plant.kG * Math.cos(position);
+
+        // Static friction
+        double net;
+        if(rate != 0) {
+            net = drive - plant.kS * Math.signum(rate);
+        } else if(Math.abs(drive) > plant.kS) {
+            net = drive - plant.kS * Math.signum(drive);
+        } else {
+            net = 0;
+        }
+
+        // kV/kA dynamics
+        double prev_rate = rate;
+
+        if(is_first_order) {
+            rate = net / plant.kV;
+            position += rate * step_period;
+        } else {
+            double next_pos = a00 * position + a01 * rate + b0 * net;
+            double next_rate = a10 * position + a11 * rate + b1 * net;
+            position = next_pos;
+            rate = next_rate;
+        }
+
+        // Friction stops the mechanism instead of reversing it
+        if(prev_rate != 0 && Math.signum(rate) != Math.signum(prev_rate) && Math.abs(drive) <= plant.kS) {
+            rate = 0;
+        }
+
+        // Hard stops
+        if(hard_limits != null) {
+            if(position < hard_limits.lower) {
+                position = hard_limits.lower;
+                rate = Math.max(rate, 0);
+            } else if(position > hard_limits.upper) {
+                position = hard_limits.upper;
+                rate = Math.min(rate, 0);
+            }
+        }
+
+        current = motor.getCurrent(rate * motor_ratio, applied);
+        sim_time += step_period;
+    }
+
+    /**
+     * Advances the simulation by a duration using fixed steps
+     * @param   duration    time to advance in seconds
+     */
+    public void step(double duration) {
+        int steps = (int)Math.round(duration / step_period);
+        for(int i = 0; i < steps; i++) step();
+    }
+
+    /**
+     * Gets the voltage delivered to the motors from the commanded voltage and bus voltage
+     * @return  delivered voltage
+     */
+    private double getAppliedVoltage() {
+        if(duty_nominal > 0) return Math.max(-1, Math.min(1, voltage / duty_nominal)) * bus_voltage;
+
+        return Math.max(-bus_voltage, Math.min(bus_voltage, voltage));
+    }
+
+    /**
+     * Simulation periodic method. Advances the simulation by one robot loop period.
+     */
+    @Override
+    public void simulationPeriodic() {
+        step(TimedRobot.kDefaultPeriod);
+    }
+
+    @Override
+    public double getPosition() { return position; }
+
+    @Override
+    public double getRate() { return rate; }
+
+    @Override
+    public double getMotorVoltage(int motor) { return getAppliedVoltage(); }
+
+    @Override
+    public double getMotorCurrent(int motor) { return current; }
+
+    @Override
+    public boolean atLowerLimitSensor() { return hard_limits != null && position <= hard_limits.lower; }
+
+    @Override
+    public boolean atUpperLimitSensor() { return hard_limits != null && position >= hard_limits.upper; }
+
+    @Override
+    public void setMotorVoltage(double voltage) { this.voltage = voltage; }
+}
@@ -25,34 +25,71 @@
 import frc.lib2960.util.*;
 import frc.lib2960.controllers.*;
 
+import java.util.function.DoubleSupplier;
+import java.util.function.DoubleUnaryOperator;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.VecBuilder;
 import edu.wpi.first.math.Vector;
+import edu.wpi.first.math.numbers.N3;
 import edu.wpi.first.math.geometry.*;
+import edu.wpi.first.math.util.Units;
 import edu.wpi.first.wpilibj2.command.*;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.math.kinematics.*;
 import edu.wpi.first.networktables.*;
+import edu.wpi.first.wpilibj.shuffleboard.*;
+import edu.wpi.first.wpilibj.smartdashboard.*;
 
 import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
 
+import com.pathplanner.lib.auto.NamedCommands;
+
 public abstract class SwerveDriveBase extends SubsystemBase implements Drivetrain {
     /**
      * Robot drivetrain settings
      */
-    public class Settings {
+    public static class Settings {
         public final double max_drive_speed;    /**< Maximum speed of the robot drivetrain */
         public final double max_angle_rate;     /**< Maximum angle rate of the robot */
         
         public final double tracking_angle_accel;   /**< Angle tracking angle acceleration */
         public final double tracking_angle_decel;   /**< Angle tracking angle deceleration */
 
+        public final double pose_history_window;    /**< Length of pose history in seconds */
+
+        /**
+         * Constructor
+         * @param   max_drive_speed         maximum drive speed of the robot drivetrain
+         * @param   max_angle_rate          maximum angle rate of the robot drivetrain
+         * @param   tracking_angle_accel    angle tracking angle acceleration of the robot 
+         *                                      drivetrain
+         * @param   tracking_angle_decel    angle tracking angle deceleration of the robot 
+         *                                      drivetrain
+         * @param   pose_history_window     length of time estimated poses are kept for 
+         *                                      getPoseAt in seconds
+         */
+        public Settings(double max_drive_speed, double max_angle_rate, 
+                        double tracking_angle_accel, double tracking_angle_decel,
+                        double pose_history_window) {
+            this.max_drive_speed = max_drive_speed;
+            this.max_angle_rate = max_angle_rate;
+            this.tracking_angle_accel = tracking_angle_accel;
+            this.tracking_angle_decel = tracking_angle_decel;
+            this.pose_history_window = pose_history_window;
+        }
+
         /**
          * Constructor
+         *      - pose_history_window is set to 1.5 seconds
          * @param   max_drive_speed         maximum drive speed of the robot drivetrain
          * @param   max_angle_rate          maximum angle rate of the robot drivetrain
          * @param   tracking_angle_accel    angle tracking angle acceleration of the robot 
          *                                      drivetrain
          * @param   tracking_angle_decel    angle tracking angle deceleration of the robot 
          *                                      drivetrain
-         * #
          */
         public Settings(double max_drive_speed, double max_angle_rate, 
                         double tracking_angle_accel, double tracking_angle_decel) {
@@ -60,6 +97,7 @@ public abstract class SwerveDriveBase extends SubsystemBase implements Drivetrai
             this.max_angle_rate = max_angle_rate;
             this.tracking_angle_accel = tracking_angle_accel;
             this.tracking_angle_decel = tracking_angle_decel;
+            this.pose_history_window = 1.5;
         }
     }
 
@@ -80,12 +118,28 @@ public abstract class SwerveDriveBase extends SubsystemBase implements Drivetrai
             addRequirements(dt);
         }   
 
+        /**
+         * Resets the drive limiters to the current robot speeds
+         */
+        @Override
+        public void initialize() {
+            dt.resetLimiters();
+        }
+
         /**
          * Update the drivetrain kinematics
          */
         @Override
         public void execute() {
-            dt.updateKinematics(dt.desired_speeds);
+            dt.command_probe.start();
+
+            dt.updateKinematics(
+                dt.desired_speeds.vxMetersPerSecond, 
+                dt.desired_speeds.vyMetersPerSecond,
+                dt.desired_speeds.omegaRadiansPerSecond
+            );
+
+            dt.command_probe.stop();
         }
 
     }
@@ -110,18 +164,29 @@ public abstract class SwerveDriveBase extends SubsystemBase implements Drivetrai
         } 
 
 
+        /**
+         * Resets the angle tracking profile and the drive limiters
+         */
+        @Override
+        public void initialize() {
+            dt.angle_tracker.reset();
+            dt.resetLimiters();
+        }
+
         /**
          * Updates angle tracking
          */
         @Override
         public void execute() {
-            ChassisSpeeds speeds = new ChassisSpeeds(
+            dt.command_probe.start();
+
+            dt.updateKinematics(
                 dt.desired_speeds.vxMetersPerSecond, 
                 dt.desired_speeds.vyMetersPerSecond,
                 dt.getAngleTrackingRate(target)
             );
 
-            dt.updateKinematics(speeds);
+            dt.command_probe.stop();
         }
 
         /**
@@ -134,12 +199,21 @@ public abstract class SwerveDriveBase extends SubsystemBase implements Drivetrai
     }
 
     /**
-     * Command to track a desired position
+     * Command to track a desired position. With a flight time model set, the command aims at a 
+     * virtual target led by the robot velocity so game pieces launched while moving hit the 
+     * target.
      */
-    private class PointTrackCommand extends Command {
+    public class PointTrackCommand extends Command {
+        private static final int LEAD_ITERATIONS = 5;       /**< Max virtual target iterations */
+        private static final double LEAD_TOLERANCE = 1e-3;  /**< Virtual target convergence distance in meters */
+
         private final SwerveDriveBase dt;
-        private final Translation2d target;
-        private final Rotation2d offset;
+        private Translation2d target;
+        private Rotation2d offset;
+        private DoubleUnaryOperator flight_time = null;     /**< Flight time in seconds by distance. Null disables lead. */
+
+        private double virtual_x = 0;                       /**< Last virtual target x */
+        private double virtual_y = 0;                       /**< Last virtual target y */
         
         /**
          * Constructor. Offset is set to 0 degrees.
@@ -159,7 +233,6 @@ public abstract class SwerveDriveBase extends SubsystemBase implements Drivetrai
          * @param   dt                  Drivetrain object reference
          * @param   target              Target point to track
          * @param   offset              Robot angle offset from target point
-         * @param   is_field_relative   sets if the linear motions are field relative
          */
         public PointTrackCommand(SwerveDriveBase dt, Translation2d target, Rotation2d offset) {
             this.dt = dt;
@@ -170,24 +243,80 @@ public abstract class SwerveDriveBase extends SubsystemBase implements Drivetrai
         } 
 
 
+        /**
+         * Resets the angle tracking profile and the drive limiters
+         */
+        @Override
+        public void initialize() {
+            dt.angle_tracker.reset();
+            dt.resetLimiters();
+        }
+
         /**
          * Updates point tracking
          */
         @Override
         public void execute() {
-            // Calculate target angle
-            Translation2d current = dt.getEstimatedPos().getTranslation();
-            Translation2d difference = target.minus(current);
-            Rotation2d target_angle = difference.getAngle().plus(offset);
+            dt.command_probe.start();
+
+            Pose2d current = dt.getEstimatedPos();
+
+            // Field relative robot velocity for the bearing rate and leading the target
+            ChassisSpeeds speeds = dt.getRobotRelativeSpeeds();
+            double heading = current.getRotation().getRadians();
+            double cos = Math.cos(heading);
+            double sin = Math.sin(heading);
+
+            double vx = speeds.vxMetersPerSecond * cos - speeds.vyMetersPerSecond * sin;
+            double vy = speeds.vxMetersPerSecond * sin + speeds.vyMetersPerSecond * cos;
+
+            updateVirtualTarget(current.getX(), current.getY(), vx, vy);
+
+            // Calculate target angle and its rate as the robot moves past the virtual target
+            double dx = virtual_x - current.getX();
+            double dy = virtual_y - current.getY();
+            double dist_sq = dx * dx + dy * dy;
+            double target_angle = Math.toDegrees(Math.atan2(dy, dx)) + offset.getDegrees();
+            double target_rate = dist_sq > 1e-6 ? Math.toDegrees((dy * vx - dx * vy) / dist_sq) : 0;
 
             // Update Kinematics
-            ChassisSpeeds speeds = new ChassisSpeeds(
+            dt.updateKinematics(
                 dt.desired_speeds.vxMetersPerSecond, 
                 dt.desired_speeds.vyMetersPerSecond,
-                dt.getAngleTrackingRate(target_angle)
+                dt.getAngleTrackingRate(target_angle, target_rate)
             );
 
-            dt.updateKinematics(speeds);
+            dt.command_probe.stop();
+        }
+
+        /**
+         * Solves for the virtual target. A game piece launched now travels with the robot 
+         * velocity for its flight time, so the virtual target is the target offset by the robot 
+         * velocity times the flight time to the virtual target. Solved by fixed point iteration 
+         * with a bounded number of iterations.
+         * @param   x       robot x position
+         * @param   y       robot y position
+         * @param   vx      field relative robot x velocity
+         * @param   vy      field relative robot y velocity
+         */
+        private void updateVirtualTarget(double x, double y, double vx, double vy) {
+            virtual_x = target.getX();
+            virtual_y = target.getY();
+
+            if(flight_time == null) return;
+
+            for(int i = 0; i < LEAD_ITERATIONS; i++) {
+                double dist = Math.hypot(virtual_x - x, virtual_y - y);
+                double time = flight_time.applyAsDouble(dist);
+                double next_x = target.getX() - vx * time;
+                double next_y = target.getY() - vy * time;
+                double change = Math.hypot(next_x - virtual_x, next_y - virtual_y);
+
+                virtual_x = next_x;
+                virtual_y = next_y;
+
+                if(change < LEAD_TOLERANCE) break;
+            }
         }
 
         /**
@@ -205,6 +334,24 @@ public abstract class SwerveDriveBase extends SubsystemBase implements Drivetrai
         public void updateOffset(Rotation2d offset) {
             this.offset = offset;
         }
+
+        /**
+         * Sets the flight time model used to lead the target while moving
+         * @param   flight_time     flight time in seconds by distance to the target in meters. 
+         *                              Null disables leading the target.
+         */
+        public void setFlightTimeModel(DoubleUnaryOperator flight_time) {
+            this.flight_time = flight_time;
+        }
+
+        /**
+         * Gets the virtual target from the last update. Equal to the target when no flight time 
+         * model is set.
+         * @return  virtual target
+         */
+        public Translation2d getVirtualTarget() {
+            return new Translation2d(virtual_x, virtual_y);
+        }
         
     }
 
@@ -235,99 +382,236 @@ public abstract class SwerveDriveBase extends SubsystemBase implements Drivetrai
 
     }
 
+    /**
+     * Command to drive the robot from shaped driver inputs. Inputs are fractions of the 
+     * maximum drive speed and maximum angle rate.
+     */
+    public class DriveCommand extends Command {
+        private final SwerveDriveBase dt;       /**< Drivetrain object reference */
+        private final DoubleSupplier x_input;   /**< X speed input */
+        private final DoubleSupplier y_input;   /**< Y speed input */
+        private final DoubleSupplier r_input;   /**< Angle rate input */
+
+        /**
+         * Constructor
+         * @param   dt          Drivetrain object reference
+         * @param   x_input     X speed input as a fraction of the maximum drive speed
+         * @param   y_input     Y speed input as a fraction of the maximum drive speed
+         * @param   r_input     Angle rate input as a fraction of the maximum angle rate
+         */
+        public DriveCommand(SwerveDriveBase dt, DoubleSupplier x_input, DoubleSupplier y_input, 
+                            DoubleSupplier r_input) {
+            this.dt = dt;
+            this.x_input = x_input;
+            this.y_input = y_input;
+            this.r_input = r_input;
+
+            addRequirements(dt);
+        }
+
+        /**
+         * Resets the drive limiters to the current robot speeds
+         */
+        @Override
+        public void initialize() {
+            dt.resetLimiters();
+        }
+
+        /**
+         * Read the inputs and update the drivetrain kinematics
+         */
+        @Override
+        public void execute() {
+            dt.command_probe.start();
+
+            dt.desired_speeds.vxMetersPerSecond = x_input.getAsDouble() * dt.settings.max_drive_speed;
+            dt.desired_speeds.vyMetersPerSecond = y_input.getAsDouble() * dt.settings.max_drive_speed;
+            dt.desired_speeds.omegaRadiansPerSecond = r_input.getAsDouble() * dt.settings.max_angle_rate;
+
+            dt.updateKinematics(
+                dt.desired_speeds.vxMetersPerSecond, 
+                dt.desired_speeds.vyMetersPerSecond,
+                dt.desired_speeds.omegaRadiansPerSecond
+            );
+
+            dt.command_probe.stop();
+        }
+    }
+
     // TODO implement TargetTrackCommand
 
     private final Settings settings;                    /**< Drivetrain settings */
 
     private final SwerveModuleBase[] modules;           /**< List of drivetrain swerve modules */
 
-    private ChassisSpeeds desired_speeds;               /**< Desired chassis speeds */
+    private final ChassisSpeeds desired_speeds;         /**< Desired chassis speeds */
+
+    private final double[] module_x;                    /**< Module x offsets from robot center */
+    private final double[] module_y;                    /**< Module y offsets from robot center */
+    private final double[] module_speeds;               /**< Module target speed buffer */
+    private final double[] module_angles;               /**< Module target angle buffer in degrees */
+    private final double[] module_max_step;             /**< Module max steering step per update in degrees */
 
     private boolean is_field_relative = false;          /**< Field Relative enable flag */
 
+    private double forward_accel_limit = 0;             /**< Max acceleration increasing speed. 0 is unlimited. */
+    private double skid_accel_limit = 0;                /**< Max total acceleration before the wheels slip. 0 is unlimited. */
+    private double angle_accel_limit = 0;               /**< Max angle acceleration. 0 is unlimited. */
+    private double tip_accel_limit_x = 0;               /**< Max robot relative x acceleration before tipping. 0 is unlimited. */
+    private double tip_accel_limit_y = 0;               /**< Max robot relative y acceleration before tipping. 0 is unlimited. */
+    private final double tip_base_x;                    /**< Smallest module x offset from robot center */
+    private final double tip_base_y;                    /**< Smallest module y offset from robot center */
+    private double limited_vx = 0;                      /**< Last field relative x speed after limiting */
+    private double limited_vy = 0;                      /**< Last field relative y speed after limiting */
+    private double limited_omega = 0;                   /**< Last angle rate after limiting */
+    private double accel_scale = 1;                     /**< Last translational acceleration scale */
+
+    private static final int SETPOINT_ITERATIONS = 8;   /**< Setpoint step bisection iterations */
+    private boolean is_setpoint_limited = false;        /**< Steering rate setpoint limiting enable flag */
+    private double setpoint_vx = 0;                     /**< Last robot relative x speed setpoint */
+    private double setpoint_vy = 0;                     /**< Last robot relative y speed setpoint */
+    private double setpoint_omega = 0;                  /**< Last angle rate setpoint */
+    private double setpoint_step = 1;                   /**< Last fraction of the setpoint change taken */
+
     private boolean vision_updated = false;             /**< Vision update at least once flag */
     private boolean ignore_camera = false;              /**< Ignore vision updates flag */
+    private final VisionMeasurementQueue vision_queue;  /**< Queued vision measurements */
 
     private final SwerveDriveKinematics kinematics;     /**< Swerve drive Kinematics object */
     private final SwerveDrivePoseEstimator pose_est;    /**< Swerve Drive Pose Estimator object */
 
     private final PositionController angle_tracker;     /**< Position tracker for angle tracking */
 
+    private Notifier odometry_notifier = null;          /**< High rate odometry sampling thread */
+    private OdometryBuffer odometry_buffer = null;      /**< Odometry sample buffer */
+    private final double[] sample_drive_pos;            /**< Odometry thread drive position buffer */
+    private final double[] sample_angles;               /**< Odometry thread module angle buffer */
+    private final SwerveModulePosition[] drain_positions;   /**< Odometry drain module positions */
+
+    private PoseHistory pose_history;                   /**< Estimated pose history */
+    private final double[] pose_query = new double[3];  /**< getPoseAt query buffer */
+
     private final AngleRateCommand angle_rate_cmd;      /**< Internal Angle Rate command */
     private final AngleTrackCommand angle_track_cmd;    /**< Internal Angle Tracking command */
     private final PointTrackCommand point_track_cmd;    /**< Internal Point Tracking command */
     private final CrossWheelsCommand cross_wheels_cmd;  /**< Internal Cross Wheels command */
 
-    // Shuffleboard
-    private GenericEntry sb_posEstX;
-    private GenericEntry sb_posEstY;
-    private GenericEntry sb_posEstR;
-
-    private GenericEntry sb_speedX;
-    private GenericEntry sb_speedY;
-    private GenericEntry sb_speedR;
-    private GenericEntry sb_robotTargetAngle;
-    private GenericEntry sb_speedTargetR;
+    // Telemetry
+    private static final int TLM_POSE_X = 0;
+    private static final int TLM_POSE_Y = 1;
+    private static final int TLM_POSE_R = 2;
+    private static final int TLM_SPEED_X = 3;
+    private static final int TLM_SPEED_Y = 4;
+    private static final int TLM_SPEED_R = 5;
+    private static final int TLM_ROBOT_TARGET_ANGLE = 6;
+    private static final int TLM_ACCEL_SCALE = 7;
+    private static final int TLM_SETPOINT_STEP = 8;
+
+    private final TelemetryGroup telemetry;             /**< Drivetrain telemetry group */
+
+    // Loop Timing
+    private final LoopProfiler.Probe periodic_probe;    /**< Periodic method timing probe */
+    private final LoopProfiler.Probe command_probe;     /**< Internal command timing probe */
     private double robotTargetAngle;
 
+    // Shuffleboard
+
     private ComplexWidget sb_field2d;
     private Field2d field2d;
     private FieldObject2d fieldTargetPoint;
 
     /**
      * Constructor
+     * @param   settings        drivetrain settings
      * @param   modules         list of module used in the drivetrain
-     * @param   module_details  module details object for the drivetrain
      */
-    private SwerveDriveBase(Settings settings, SwerveModuleBase[] modules, ModuleDetails module_details) {
+    public SwerveDriveBase(Settings settings, SwerveModuleBase[] modules) {
         this.settings = settings;
         this.modules = modules;
 
         // Get Module Positions
         Translation2d module_positions[] = getModuleTranslation();
 
-        // Get Module States
-        SwerveModuleState module_states[] = new SwerveModuleStates[modules.size()];
-        for(int i = 0; i < modules.size(); i++) module_states[i] = modules.getState();
+        // Initialize kinematics buffers
+        desired_speeds = new ChassisSpeeds();
+        module_x = new double[modules.length];
+        module_y = new double[modules.length];
+        module_speeds = new double[modules.length];
+        module_angles = new double[modules.length];
+        module_max_step = new double[modules.length];
+
+        // TODO Set update period from global settings
+        for(int i = 0; i < modules.length; i++) {
+            module_max_step[i] = modules[i].settings.anglePosCtrl.max_rate * TimedRobot.kDefaultPeriod;
+        }
+
+        for(int i = 0; i < modules.length; i++) {
+            module_x[i] = module_positions[i].getX();
+            module_y[i] = module_positions[i].getY();
+        }
+
+        // Find the support base used for the tip limits
+        double base_x = Double.MAX_VALUE;
+        double base_y = Double.MAX_VALUE;
+
+        for(int i = 0; i < modules.length; i++) {
+            base_x = Math.min(base_x, Math.abs(module_x[i]));
+            base_y = Math.min(base_y, Math.abs(module_y[i]));
+        }
+
+        tip_base_x = base_x;
+        tip_base_y = base_y;
+
+        // Initialize pose history
+        pose_history = new PoseHistory(
+            settings.pose_history_window, 
+            (int)Math.ceil(settings.pose_history_window / TimedRobot.kDefaultPeriod) + 1
+        );
+
+        // Initialize vision measurement queue
+        vision_queue = new VisionMeasurementQueue(32);
+
+        // Initialize odometry thread buffers
+        sample_drive_pos = new double[modules.length];
+        sample_angles = new double[modules.length];
+        drain_positions = new SwerveModulePosition[modules.length];
+
+        for(int i = 0; i < modules.length; i++) drain_positions[i] = new SwerveModulePosition();
 
-        
         // Initialize Kinematics
         kinematics = new SwerveDriveKinematics(module_positions);
 
         // Initialize Pose Estimation
-        pose_est = new SwerveDrivePoseEstimator(kinematics, getAngle(), module_positions, new Pose2d(), 
+        pose_est = new SwerveDrivePoseEstimator(kinematics, getAngle(), getModulePositions(), new Pose2d(), 
                                                 VecBuilder.fill(0.05, 0.05, Units.degreesToRadians(5)),
                                                 VecBuilder.fill(0.5, 0.5, Units.degreesToRadians(30))
         );
         
         // Initialize angle tracking
         PositionController.Settings angle_tracker_settings = new PositionController.Settings(
-            dt.settings.tracking_angle_accel,
-            dt.settings.tracking_angle_decel,
-            dt.settings.max_angle_rate,
-            0,
-            360,
-            true
+            settings.tracking_angle_accel,
+            settings.tracking_angle_decel,
+            settings.max_angle_rate,
+            true,
+            new Limits(-180, 180)
         );
 
         angle_tracker = new PositionController(angle_tracker_settings);
 
-        // Initialize Shuffleboard
-        var pose_layout = Shuffleboard.getTab("Drive")
-                .getLayout("Drive Pose", BuiltInLayouts.kList)
-                .withSize(1, 4);
-        sb_posEstX = pose_layout.add("Pose X", pose_est.getEstimatedPosition().getX()).getEntry();
-        sb_posEstY = pose_layout.add("Pose Y", pose_est.getEstimatedPosition().getY()).getEntry();
-        sb_posEstR = pose_layout
-                .add("Pose R", pose_est.getEstimatedPosition().getRotation().getDegrees()).getEntry();
-
-        sb_speedX = pose_layout.add("Speed X", 0).getEntry();
-        sb_speedY = pose_layout.add("Speed Y", 0).getEntry();
-        sb_speedR = pose_layout.add("Speed R", 0).getEntry();
-        sb_robotTargetAngle = pose_layout.add("Robot Target Angle", 0).getEntry();
+        // Initialize Telemetry
+        telemetry = TelemetryRegistry.getInstance().register(
+            "Drive/Drive Pose",
+            "Pose X", "Pose Y", "Pose R", "Speed X", "Speed Y", "Speed R", "Robot Target Angle", 
+            "Accel Scale", "Setpoint Step"
+        );
 
-        sb_speedTargetR = pose_layout.add("Target Speed R", 0).getEntry();
+        // Initialize Loop Timing
+        periodic_probe = LoopProfiler.getInstance().register("Drive periodic");
+        command_probe = LoopProfiler.getInstance().register("Drive command");
 
+        // Initialize Shuffleboard
+        field2d = new Field2d();
+        fieldTargetPoint = field2d.getObject("fieldTargetPoint");
         sb_field2d = Shuffleboard.getTab("Drive").add(field2d).withWidget("Field");
 
         // Initialize internal commands
@@ -340,7 +624,7 @@ public abstract class SwerveDriveBase extends SubsystemBase implements Drivetrai
         setDefaultCommand(angle_rate_cmd);
 
         // Register Named Command with PathPlanner
-        PathPlanner.registerCommand("Cross Wheels", cross_wheels_cmd);
+        NamedCommands.registerCommand("Cross Wheels", cross_wheels_cmd);
     } 
 
 
@@ -353,9 +637,9 @@ public abstract class SwerveDriveBase extends SubsystemBase implements Drivetrai
      * @return  list of module position translations
      */
     public Translation2d[] getModuleTranslation() {
-        Translation2d result[] = new Translation[modules.size()]; 
+        Translation2d result[] = new Translation2d[modules.length]; 
         
-        for(int i = 0; i < modules.size(); i++) result[i] = modules.settings.Translation;
+        for(int i = 0; i < modules.length; i++) result[i] = modules[i].settings.translation;
         
         return result;
     }
@@ -365,9 +649,9 @@ public abstract class SwerveDriveBase extends SubsystemBase implements Drivetrai
      * @return  list of module states
      */
     public SwerveModuleState[] getModuleStates() {
-        SwerveModuleState result[] = new SwerveModuleStates[modules.size()];
+        SwerveModuleState result[] = new SwerveModuleState[modules.length];
 
-        for(int i = 0; i < modules.size(); i++) result[i] = modules.getState();
+        for(int i = 0; i < modules.length; i++) result[i] = modules[i].getState();
 
         return result;
     }
@@ -377,9 +661,9 @@ public abstract class SwerveDriveBase extends SubsystemBase implements Drivetrai
      * @return  list of module positions
      */
     public SwerveModulePosition[] getModulePositions() {
-        SwerveModulePosition result[] = new SwerveModulePosition[modules.size()];
+        SwerveModulePosition result[] = new SwerveModulePosition[modules.length];
 
-        for(int i = 0; i < modules.size(); i++) result[i] = modules.getPosition();
+        for(int i = 0; i < modules.length; i++) result[i] = modules[i].getPosition();
 
         return result;
     }
@@ -429,7 +713,7 @@ public abstract class SwerveDriveBase extends SubsystemBase implements Drivetrai
      */
     public void setFieldRelativeSpeeds(ChassisSpeeds speeds) {
         this.setFieldRelative(true);
-        this.desired_speeds = speeds;
+        setDesiredSpeeds(speeds);
         runAngleRateCmd();
     }
 
@@ -439,7 +723,7 @@ public abstract class SwerveDriveBase extends SubsystemBase implements Drivetrai
      */
     public void setRobotRelativeSpeeds(ChassisSpeeds speeds) {
         this.setFieldRelative(false);
-        this.desired_speeds = speeds;
+        setDesiredSpeeds(speeds);
         runAngleRateCmd();
     }
 
@@ -469,6 +753,7 @@ public abstract class SwerveDriveBase extends SubsystemBase implements Drivetrai
     public void setPointTracking(Translation2d target, Rotation2d offset) {
         point_track_cmd.updateTarget(target);
         point_track_cmd.updateOffset(offset);
+        fieldTargetPoint.setPose(new Pose2d(target, new Rotation2d()));
         runPointTrackCmd();
     }
 
@@ -480,6 +765,24 @@ public abstract class SwerveDriveBase extends SubsystemBase implements Drivetrai
         setPointTracking(target, new Rotation2d());
     }
 
+    /**
+     * Sets the flight time model used by point tracking to lead the target while moving
+     * @param   flight_time     flight time in seconds by distance to the target in meters. Null 
+     *                              disables leading the target.
+     */
+    public void setPointTrackingFlightTime(DoubleUnaryOperator flight_time) {
+        point_track_cmd.setFlightTimeModel(flight_time);
+    }
+
+    /**
+     * Gets the virtual target point tracking is aiming at. Used to set the shooter for the 
+     * virtual target distance.
+     * @return  virtual target
+     */
+    public Translation2d getPointTrackingVirtualTarget() {
+        return point_track_cmd.getVirtualTarget();
+    }
+
     /**
      * Sets the robot to have crossed wheels
      */
@@ -494,6 +797,104 @@ public abstract class SwerveDriveBase extends SubsystemBase implements Drivetrai
         runAngleRateCmd();
     }
 
+    /******************************/
+    /* Acceleration Limit Methods */
+    /******************************/
+
+    /**
+     * Sets the acceleration limits applied to the desired speeds. A limit of 0 disables it.
+     * @param   forward_accel   max acceleration increasing the robot speed in meters per 
+     *                              second squared
+     * @param   skid_accel      max total acceleration before the wheels slip in meters per 
+     *                              second squared
+     * @param   angle_accel     max angle acceleration in radians per second squared
+     */
+    public void setAccelLimits(double forward_accel, double skid_accel, double angle_accel) {
+        this.forward_accel_limit = Math.abs(forward_accel);
+        this.skid_accel_limit = Math.abs(skid_accel);
+        this.angle_accel_limit = Math.abs(angle_accel);
+    }
+
+    /**
+     * Sets the tip acceleration limits. A limit of 0 disables it.
+     * @param   x_accel     max robot relative x acceleration before tipping in meters per 
+     *                          second squared
+     * @param   y_accel     max robot relative y acceleration before tipping in meters per 
+     *                          second squared
+     */
+    public void setTipLimits(double x_accel, double y_accel) {
+        this.tip_accel_limit_x = Math.abs(x_accel);
+        this.tip_accel_limit_y = Math.abs(y_accel);
+    }
+
+    /**
+     * Sets the tip acceleration limits from the height of the robot center of gravity. The 
+     * robot tips when its acceleration exceeds g times the module offset over the center of 
+     * gravity height. Can be called every cycle as the superstructure moves.
+     * @param   height  center of gravity height in meters. 0 disables the tip limits.
+     */
+    public void setCenterOfGravityHeight(double height) {
+        if(height <= 0) {
+            setTipLimits(0, 0);
+            return;
+        }
+
+        setTipLimits(9.80665 * tip_base_x / height, 9.80665 * tip_base_y / height);
+    }
+
+    /**
+     * Resets the acceleration limiter to the current measured robot speeds
+     */
+    public void resetAccelLimiter() {
+        ChassisSpeeds speeds = getRobotRelativeSpeeds();
+        double heading = getEstimatedPos().getRotation().getRadians();
+        double cos = Math.cos(heading);
+        double sin = Math.sin(heading);
+
+        limited_vx = speeds.vxMetersPerSecond * cos - speeds.vyMetersPerSecond * sin;
+        limited_vy = speeds.vxMetersPerSecond * sin + speeds.vyMetersPerSecond * cos;
+        limited_omega = speeds.omegaRadiansPerSecond;
+    }
+
+    /**
+     * Enables or disables steering rate setpoint limiting. When enabled, each update takes the 
+     * largest step toward the desired speeds that every module can steer to within its angle 
+     * position controller max rate. Disabled by default.
+     * @param   enable  set to true to enable setpoint limiting. Set to false to disable.
+     */
+    public void setSetpointLimiting(boolean enable) {
+        this.is_setpoint_limited = enable;
+    }
+
+    /**
+     * Resets the setpoint limiter to the current measured robot speeds and module angles
+     */
+    public void resetSetpointLimiter() {
+        ChassisSpeeds speeds = getRobotRelativeSpeeds();
+
+        setpoint_vx = speeds.vxMetersPerSecond;
+        setpoint_vy = speeds.vyMetersPerSecond;
+        setpoint_omega = speeds.omegaRadiansPerSecond;
+
+        for(int i = 0; i < modules.length; i++) module_angles[i] = modules[i].getAnglePos().getDegrees();
+    }
+
+    /**
+     * Gets the last setpoint step. 1 if the last update reached the desired speeds.
+     * @return  fraction of the last desired speed change taken
+     */
+    public double getSetpointStep() {
+        return setpoint_step;
+    }
+
+    /**
+     * Gets the last translational acceleration scale. 1 if the last update was not limited.
+     * @return  last translational acceleration scale
+     */
+    public double getAccelScale() {
+        return accel_scale;
+    }
+
     /*****************************/
     /* Drivetrain Access Methods */
     /*****************************/
@@ -504,7 +905,7 @@ public abstract class SwerveDriveBase extends SubsystemBase implements Drivetrai
      * @return estimated robot pose
      */
     public Pose2d getEstimatedPos() {
-        return swerveDrivePoseEstimator.getEstimatedPosition();
+        return pose_est.getEstimatedPosition();
     }
 
     /**
@@ -520,42 +921,129 @@ public abstract class SwerveDriveBase extends SubsystemBase implements Drivetrai
      * @param   new_pose    new estimated robot position
      */
     public void resetPoseEst(Pose2d new_pose) {
-        pose_est.reset(getAngle(), getModulePositions(), new_pose);
+        // Discard odometry samples taken before the reset
+        if(odometry_buffer != null) odometry_buffer.release(odometry_buffer.available());
+
+        pose_est.resetPosition(getAngle(), getModulePositions(), new_pose);
+        pose_history.clear();
         vision_updated = false;
     }
 
+    /**
+     * Gets the estimated robot pose at a past time by interpolating the pose history. Times 
+     * outside of the history window return the nearest recorded pose.
+     * @param   timestamp   FPGA timestamp in seconds
+     * @return  estimated robot pose at the timestamp
+     */
+    public Pose2d getPoseAt(double timestamp) {
+        if(!pose_history.getPoseAt(timestamp, pose_query)) return getEstimatedPos();
+
+        return new Pose2d(pose_query[0], pose_query[1], Rotation2d.fromRadians(pose_query[2]));
+    }
+
+    /**
+     * Gets the estimated robot pose at a past time by interpolating the pose history without 
+     * allocating. Times outside of the history window return the nearest recorded pose.
+     * @param   timestamp   FPGA timestamp in seconds
+     * @param   result      Array of at least 3 values to hold the pose x, y, and angle in radians
+     * @return  true if a pose was found, false if the history is empty
+     */
+    public boolean getPoseAt(double timestamp, double[] result) {
+        return pose_history.getPoseAt(timestamp, result);
+    }
+
+    /***************************/
+    /* Odometry Thread Methods */
+    /***************************/
+
+    /**
+     * Starts a dedicated thread to sample odometry at a higher rate than the main loop. Samples 
+     * are buffered and applied to the pose estimator in the periodic method. getAngle() and the 
+     * module getDrivePos() and getAnglePos() methods must be safe to call from another thread 
+     * when this is enabled.
+     * @param   frequency   odometry sample rate in Hz
+     */
+    public void startOdometryThread(double frequency) {
+        stopOdometryThread();
+
+        // Size buffer to hold several main loop periods worth of samples
+        int capacity = Math.max(16, (int)Math.ceil(frequency * TimedRobot.kDefaultPeriod * 4));
+        odometry_buffer = new OdometryBuffer(capacity, modules.length);
+
+        // Resize pose history to hold every odometry sample in the window
+        pose_history = new PoseHistory(
+            settings.pose_history_window, 
+            (int)Math.ceil(settings.pose_history_window * frequency) + 1
+        );
+
+        odometry_notifier = new Notifier(this::sampleOdometry);
+        odometry_notifier.setName("Odometry");
+        odometry_notifier.startPeriodic(1.0 / frequency);
+    }
+
+    /**
+     * Stops the odometry thread. Pose estimation returns to updating once per main loop.
+     */
+    public void stopOdometryThread() {
+        if(odometry_notifier != null) {
+            odometry_notifier.stop();
+            odometry_notifier.close();
+            odometry_notifier = null;
+        }
+    }
+
+    /**
+     * Gets the number of odometry samples dropped because the main loop did not drain the 
+     * buffer in time
+     * @return  number of dropped odometry samples
+     */
+    public long getOdometryDropCount() {
+        return odometry_buffer != null ? odometry_buffer.getDropCount() : 0;
+    }
+
         
     /*************************/
     /* Vision Access Methods */
     /*************************/
 
     /**
-     * adds a new vision pose update
+     * adds a new vision pose update. Safe to call from any thread. Measurements are queued and 
+     * applied to the pose estimator by the periodic method.
      * @param pose          Estimated pose from the vision
      * @param time_stamp    Timestamp of when the pose was captured
      */
     public void addVisionPose(Pose2d pose, double time_stamp) {
         // TODO Adjust standard deviations based on distance from target
-        if (!ignoreCamera) {
-            pose_est.addVisionMeasurement(pose, time_stamp);
-            vision_updated = true;
+        if (!ignore_camera) {
+            vision_queue.offer(pose.getX(), pose.getY(), pose.getRotation().getRadians(), time_stamp);
         }
     }
 
     /**
-     * adds a new vision pose update
+     * adds a new vision pose update. Safe to call from any thread. Measurements are queued and 
+     * applied to the pose estimator by the periodic method.
      * @param pose          Estimated pose from the vision
      * @param time_stamp    Timestamp of when the pose was captured
      * @param std_dev       Standard deviation values to use for the pose estimation
      */
     public void addVisionPose(Pose2d pose, double time_stamp, Vector<N3> std_dev) {
         // TODO Adjust standard deviations based on distance from target
-        if (!ignoreCamera) {
-            pose_est.addVisionMeasurement(pose, time_stamp, std_dev);
-            vision_updated = true;
+        if (!ignore_camera) {
+            vision_queue.offer(
+                pose.getX(), pose.getY(), pose.getRotation().getRadians(), time_stamp,
+                std_dev.get(0, 0), std_dev.get(1, 0), std_dev.get(2, 0)
+            );
         }
     }
 
+    /**
+     * Gets the vision measurement queue
+     * @return  vision measurement queue
+     */
+    public VisionMeasurementQueue getVisionQueue() {
+        return vision_queue;
+    }
+
 
     /**************************/
     /* Command Access Methods */
@@ -597,6 +1085,18 @@ public abstract class SwerveDriveBase extends SubsystemBase implements Drivetrai
         return new CrossWheelsCommand(this);
     }
 
+    /**
+     * Creates a Drive Command. Typically used with AxisShaper inputs as the default command.
+     * @param   x_input     X speed input as a fraction of the maximum drive speed
+     * @param   y_input     Y speed input as a fraction of the maximum drive speed
+     * @param   r_input     Angle rate input as a fraction of the maximum angle rate
+     * @return  new DriveCommand
+     */
+    public DriveCommand getDriveCommand(DoubleSupplier x_input, DoubleSupplier y_input, 
+                                        DoubleSupplier r_input) {
+        return new DriveCommand(this, x_input, y_input, r_input);
+    }
+
     /*********************************/
     /* Angle Tracking Helper Methods */
     /*********************************/
@@ -607,10 +1107,32 @@ public abstract class SwerveDriveBase extends SubsystemBase implements Drivetrai
      * @return  Angle rate to track the target angle
      */
     public double getAngleTrackingRate(Rotation2d target) {
+        return getAngleTrackingRate(target.getDegrees());
+    }
+
+    /**
+     * Calculates the angle rate for tracking an angle
+     * @param   target  Target angle in degrees
+     * @return  Angle rate to track the target angle
+     */
+    public double getAngleTrackingRate(double target) {
         double cur_pos = getAngle().getDegrees();
         double cur_rate = getAngleRate();
 
-        return angle_tracker.update(cur_pos, cur_rate, target.getDegrees());
+        return angle_tracker.update(cur_pos, cur_rate, target);
+    }
+
+    /**
+     * Calculates the angle rate for tracking a moving angle. The target rate is added as 
+     * feedforward so the tracker does not lag a moving target.
+     * @param   target          Target angle in degrees
+     * @param   target_rate     Rate of change of the target angle in degrees per second
+     * @return  Angle rate to track the target angle
+     */
+    public double getAngleTrackingRate(double target, double target_rate) {
+        double rate = getAngleTrackingRate(target) + target_rate;
+
+        return Math.min(Math.max(rate, -settings.max_angle_rate), settings.max_angle_rate);
     }
 
 
@@ -623,8 +1145,13 @@ public abstract class SwerveDriveBase extends SubsystemBase implements Drivetrai
      */
     @Override
     public void periodic() {
+        periodic_probe.start();
+
         updatePoseEst();
+        updateVisionPose();
         updateUI();
+
+        periodic_probe.stop();
     }
             
     /**************************/
@@ -635,7 +1162,87 @@ public abstract class SwerveDriveBase extends SubsystemBase implements Drivetrai
      * Updates pose estimation. Called by periodic method.
      */
     private void updatePoseEst() {
-        pose_est.update(getAngle(), getModulePositions());
+        if(odometry_notifier == null) {
+            pose_est.update(getAngle(), getModulePositions());
+            recordPose(Timer.getFPGATimestamp());
+            return;
+        }
+
+        // Drain odometry samples from the odometry thread
+        int count = odometry_buffer.available();
+
+        for(int i = 0; i < count; i++) {
+            for(int j = 0; j < modules.length; j++) {
+                drain_positions[j].distanceMeters = odometry_buffer.getDrivePos(i, j);
+                drain_positions[j].angle = Rotation2d.fromRadians(odometry_buffer.getModuleAngle(i, j));
+            }
+
+            pose_est.updateWithTime(
+                odometry_buffer.getTimestamp(i), 
+                Rotation2d.fromRadians(odometry_buffer.getGyroAngle(i)), 
+                drain_positions
+            );
+
+            recordPose(odometry_buffer.getTimestamp(i));
+        }
+
+        odometry_buffer.release(count);
+    }
+
+    /**
+     * Records the current estimated pose in the pose history
+     * @param   timestamp   timestamp of the estimate in seconds
+     */
+    private void recordPose(double timestamp) {
+        Pose2d pose = pose_est.getEstimatedPosition();
+        pose_history.add(timestamp, pose.getX(), pose.getY(), pose.getRotation().getRadians());
+    }
+
+    /**
+     * Applies queued vision measurements to the pose estimator in timestamp order. Called by 
+     * periodic method.
+     */
+    private void updateVisionPose() {
+        int count = vision_queue.drain();
+
+        for(int i = 0; i < count; i++) {
+            Pose2d pose = new Pose2d(
+                vision_queue.getX(i), 
+                vision_queue.getY(i), 
+                Rotation2d.fromRadians(vision_queue.getAngle(i))
+            );
+
+            if(vision_queue.hasStdDev(i)) {
+                pose_est.addVisionMeasurement(
+                    pose, 
+                    vision_queue.getTimestamp(i), 
+                    VecBuilder.fill(
+                        vision_queue.getStdDev(i, 0), 
+                        vision_queue.getStdDev(i, 1), 
+                        vision_queue.getStdDev(i, 2)
+                    )
+                );
+            } else {
+                pose_est.addVisionMeasurement(pose, vision_queue.getTimestamp(i));
+            }
+
+            vision_updated = true;
+        }
+    }
+
+    /**
+     * Samples the robot angle and module positions. Called by the odometry thread.
+     */
+    private void sampleOdometry() {
+        double timestamp = Timer.getFPGATimestamp();
+        double gyro_angle = getAngle().getRadians();
+
+        for(int i = 0; i < modules.length; i++) {
+            sample_drive_pos[i] = modules[i].getDrivePos();
+            sample_angles[i] = modules[i].getAnglePos().getRadians();
+        }
+
+        odometry_buffer.add(timestamp, gyro_angle, sample_drive_pos, sample_angles);
     }
 
     /**
@@ -644,38 +1251,254 @@ public abstract class SwerveDriveBase extends SubsystemBase implements Drivetrai
     private void updateUI() {
         Pose2d pose = getEstimatedPos();
 
-        sb_posEstX.setDouble(pose.getX());
-        sb_posEstY.setDouble(pose.getY());
-        sb_posEstR.setDouble(pose.getRotation().getDegrees());
+        telemetry.set(TLM_POSE_X, pose.getX());
+        telemetry.set(TLM_POSE_Y, pose.getY());
+        telemetry.set(TLM_POSE_R, pose.getRotation().getDegrees());
 
-        sb_speedX.setDouble(xSpeed);
-        sb_speedY.setDouble(ySpeed);
-        sb_speedR.setDouble(rSpeed);
-        sb_robotTargetAngle.setDouble(robotTargetAngle);
+        telemetry.set(TLM_SPEED_X, desired_speeds.vxMetersPerSecond);
+        telemetry.set(TLM_SPEED_Y, desired_speeds.vyMetersPerSecond);
+        telemetry.set(TLM_SPEED_R, desired_speeds.omegaRadiansPerSecond);
+        telemetry.set(TLM_ROBOT_TARGET_ANGLE, robotTargetAngle);
+        telemetry.set(TLM_ACCEL_SCALE, accel_scale);
+        telemetry.set(TLM_SETPOINT_STEP, setpoint_step);
 
         field2d.setRobotPose(pose);
-        field2d.getObject("fieldTargetPoint").setPose(new Pose2d(target_point, Rotation2d.fromDegrees(0)));
     }
 
     /**
-     * Updates the robot kinematics
-     * @param   speeds              Chassis speeds to use for the robot
+     * Updates the robot kinematics. Chassis speeds are converted to module states using the 
+     * preallocated kinematics buffers so no objects are created on each update.
+     * @param   x_speed     Desired x speed
+     * @param   y_speed     Desired y speed
+     * @param   r_speed     Desired angle rate in radians per second
      */
-    private void updateKinematics(ChassisSpeeds speeds) {
-        // Convert chassis speeds from field relative to robot relative if in field relative mode
-        if(is_field_relative) {
-            speeds = ChassisSpeeds.fromFieldRelativeSpeeds(speeds, getEstimatedPos().getRotation());
+    protected void updateKinematics(double x_speed, double y_speed, double r_speed) {
+        double vx = x_speed;
+        double vy = y_speed;
+        double omega = r_speed;
+
+        double heading = getEstimatedPos().getRotation().getRadians();
+        double cos = Math.cos(heading);
+        double sin = Math.sin(heading);
+
+        // Convert chassis speeds to field relative if in robot relative mode. The acceleration 
+        // limiter runs in the field frame so turning the robot does not look like acceleration.
+        if(!is_field_relative) {
+            vx = x_speed * cos - y_speed * sin;
+            vy = x_speed * sin + y_speed * cos;
         }
 
-        // Discretize chassis speeds
+        // Limit acceleration
         // TODO Set update period from global settings
-        speeds = ChassisSpeeds.discretize(speeds, TimeRobot.kDefaultPeriod);
+        applyAccelLimit(vx, vy, omega, cos, sin, TimedRobot.kDefaultPeriod);
+
+        // Convert limited speeds to robot relative
+        vx = limited_vx * cos + limited_vy * sin;
+        vy = -limited_vx * sin + limited_vy * cos;
+        omega = limited_omega;
+
+        // Limit the step to what the modules can steer to
+        applySetpointLimit(vx, vy, omega);
+        vx = setpoint_vx;
+        vy = setpoint_vy;
+        omega = setpoint_omega;
+
+        // Discretize chassis speeds. Equivalent to ChassisSpeeds.discretize.
+        // TODO Set update period from global settings
+        double dtheta = omega * TimedRobot.kDefaultPeriod;
+        double half_dtheta = dtheta / 2;
+        double cos_minus_one = Math.cos(dtheta) - 1;
+        double half_theta_by_tan;
+
+        if(Math.abs(cos_minus_one) < 1e-9) {
+            half_theta_by_tan = 1 - dtheta * dtheta / 12;
+        } else {
+            half_theta_by_tan = -(half_dtheta * Math.sin(dtheta)) / cos_minus_one;
+        }
+
+        double disc_vx = vx * half_theta_by_tan + vy * half_dtheta;
+        double disc_vy = -vx * half_dtheta + vy * half_theta_by_tan;
+
+        // Calculate module states
+        double max_speed = 0;
+
+        for(int i = 0; i < modules.length; i++) {
+            double module_vx = disc_vx - omega * module_y[i];
+            double module_vy = disc_vy + omega * module_x[i];
+            double speed = Math.sqrt(module_vx * module_vx + module_vy * module_vy);
+
+            module_speeds[i] = speed;
+
+            // Keep the last module angle if the module is not moving
+            if(speed > 1e-6) module_angles[i] = Math.toDegrees(Math.atan2(module_vy, module_vx));
+            if(speed > max_speed) max_speed = speed;
+        }
+
+        // Desaturate wheel speeds
+        if(max_speed > settings.max_drive_speed) {
+            double scale = settings.max_drive_speed / max_speed;
+            for(int i = 0; i < modules.length; i++) module_speeds[i] *= scale;
+        }
 
         // Update Swerve Modules
-        var module_states = kinematics.toSwerveModuleStates(speeds);
-        SwerveDriveKinematics.desaturateWheelSpeeds(module_states, Constants.max_drive_speed);
+        for(int i = 0; i < modules.length; i++) {
+            modules[i].setDesiredState(module_speeds[i], module_angles[i]);
+        }
+    }
+
+    /**
+     * Limits the change from the last limited speeds. The translational acceleration is scaled 
+     * as a vector so the robot accelerates along a straight line in velocity space at the 
+     * tightest of the forward, skid and tip limits, and stops exactly at the desired speed.
+     * Speeds are field relative. The acceleration is rotated into the robot frame for the tip 
+     * limits.
+     * @param   vx      desired field relative x speed
+     * @param   vy      desired field relative y speed
+     * @param   omega   desired angle rate
+     * @param   cos     cosine of the robot heading
+     * @param   sin     sine of the robot heading
+     * @param   dt      update period in seconds
+     */
+    private void applyAccelLimit(double vx, double vy, double omega, double cos, double sin, double dt) {
+        double ax = (vx - limited_vx) / dt;
+        double ay = (vy - limited_vy) / dt;
+        double accel = Math.sqrt(ax * ax + ay * ay);
+        double scale = 1;
+
+        // Forward limit applies to the part of the acceleration that increases speed
+        if(forward_accel_limit > 0) {
+            double speed = Math.sqrt(limited_vx * limited_vx + limited_vy * limited_vy);
+            double forward_accel = speed > 1e-6 ? (ax * limited_vx + ay * limited_vy) / speed : accel;
+
+            if(forward_accel > forward_accel_limit) scale = Math.min(scale, forward_accel_limit / forward_accel);
+        }
+
+        // Skid limit applies to the whole acceleration vector
+        if(skid_accel_limit > 0 && accel > skid_accel_limit) {
+            scale = Math.min(scale, skid_accel_limit / accel);
+        }
+
+        // Tip limit is an ellipse inside the support rectangle
+        if(tip_accel_limit_x > 0 && tip_accel_limit_y > 0) {
+            double tip_x = (ax * cos + ay * sin) / tip_accel_limit_x;
+            double tip_y = (-ax * sin + ay * cos) / tip_accel_limit_y;
+            double tip = Math.sqrt(tip_x * tip_x + tip_y * tip_y);
 
-        for(int i = 0; i < modules.size(); i++) modules[i].setDesiredState(module_states[i]);
+            if(tip > 1) scale = Math.min(scale, 1 / tip);
+        }
+
+        limited_vx += ax * scale * dt;
+        limited_vy += ay * scale * dt;
+        accel_scale = scale;
+
+        // Angle acceleration is limited separately
+        double alpha = (omega - limited_omega) / dt;
+
+        if(angle_accel_limit > 0) {
+            alpha = Math.min(Math.max(alpha, -angle_accel_limit), angle_accel_limit);
+        }
+
+        limited_omega += alpha * dt;
+    }
+
+    /**
+     * Finds the largest step from the last setpoint toward the desired speeds that every module 
+     * can steer to in one update. Module velocities are linear in the chassis speeds, so each 
+     * module bisects the step along the line from its last to its desired velocity, and the 
+     * smallest step is applied to the chassis so the modules stay consistent. Modules that are 
+     * stopped and pointed too far from the desired direction are steered in place first.
+     * @param   vx      desired robot relative x speed
+     * @param   vy      desired robot relative y speed
+     * @param   omega   desired angle rate
+     */
+    private void applySetpointLimit(double vx, double vy, double omega) {
+        if(!is_setpoint_limited) {
+            setpoint_vx = vx;
+            setpoint_vy = vy;
+            setpoint_omega = omega;
+            setpoint_step = 1;
+            return;
+        }
+
+        double dvx = vx - setpoint_vx;
+        double dvy = vy - setpoint_vy;
+        double domega = omega - setpoint_omega;
+        double step = 1;
+
+        // Stopped modules pointed the wrong way steer in place before the robot moves. Every 
+        // such module is steered this update, not just the first one found.
+        for(int i = 0; i < modules.length; i++) {
+            double last_x = setpoint_vx - setpoint_omega * module_y[i];
+            double last_y = setpoint_vy + setpoint_omega * module_x[i];
+            double delta_x = dvx - domega * module_y[i];
+            double delta_y = dvy + domega * module_x[i];
+
+            if(Math.sqrt(last_x * last_x + last_y * last_y) >= 1e-6) continue;
+            if(isSteerFeasible(i, delta_x, delta_y)) continue;
+
+            double target = Math.toDegrees(Math.atan2(delta_y, delta_x));
+            double error = MathUtil.inputModulus(target - module_angles[i], -90, 90);
+            error = Math.min(Math.max(error, -module_max_step[i]), module_max_step[i]);
+
+            module_angles[i] = MathUtil.inputModulus(module_angles[i] + error, -180, 180);
+            step = 0;
+        }
+
+        for(int i = 0; i < modules.length && step > 0; i++) {
+            double last_x = setpoint_vx - setpoint_omega * module_y[i];
+            double last_y = setpoint_vy + setpoint_omega * module_x[i];
+            double delta_x = dvx - domega * module_y[i];
+            double delta_y = dvy + domega * module_x[i];
+
+            if(isSteerFeasible(i, last_x + step * delta_x, last_y + step * delta_y)) continue;
+
+            double low = 0;
+            double high = step;
+
+            for(int j = 0; j < SETPOINT_ITERATIONS; j++) {
+                double mid = (low + high) / 2;
+
+                if(isSteerFeasible(i, last_x + mid * delta_x, last_y + mid * delta_y)) {
+                    low = mid;
+                } else {
+                    high = mid;
+                }
+            }
+
+            step = low;
+        }
+
+        setpoint_vx += dvx * step;
+        setpoint_vy += dvy * step;
+        setpoint_omega += domega * step;
+        setpoint_step = step;
+    }
+
+    /**
+     * Checks if a module can steer to a velocity in one update. Modules may reverse the drive 
+     * direction instead of turning more than 90 degrees.
+     * @param   index   module index
+     * @param   x       module x velocity
+     * @param   y       module y velocity
+     * @return  true if the module can steer to the velocity
+     */
+    private boolean isSteerFeasible(int index, double x, double y) {
+        if(Math.sqrt(x * x + y * y) < 1e-6) return true;
+
+        double angle = Math.toDegrees(Math.atan2(y, x));
+        double error = MathUtil.inputModulus(angle - module_angles[index], -90, 90);
+
+        return Math.abs(error) <= module_max_step[index];
+    }
+
+    /**
+     * Copies chassis speeds into the desired speeds buffer
+     * @param   speeds  new desired chassis speeds
+     */
+    private void setDesiredSpeeds(ChassisSpeeds speeds) {
+        desired_speeds.vxMetersPerSecond = speeds.vxMetersPerSecond;
+        desired_speeds.vyMetersPerSecond = speeds.vyMetersPerSecond;
+        desired_speeds.omegaRadiansPerSecond = speeds.omegaRadiansPerSecond;
     }
 
     /**
@@ -683,9 +1506,17 @@ public abstract class SwerveDriveBase extends SubsystemBase implements Drivetrai
      * won't roll freely
      */
     private void updateCrossWheels() {
-        for(var module: modules) {
-            Rotation2d angle = module.settings.translation.getAngle();
-            module.setDesiredState(new SwerveModuleState(0,angle));
+        limited_vx = 0;
+        limited_vy = 0;
+        limited_omega = 0;
+        setpoint_vx = 0;
+        setpoint_vy = 0;
+        setpoint_omega = 0;
+
+        for(int i = 0; i < modules.length; i++) {
+            Rotation2d angle = modules[i].settings.translation.getAngle();
+            module_angles[i] = angle.getDegrees();
+            modules[i].setDesiredState(0, module_angles[i]);
         }
     }
             
@@ -693,6 +1524,15 @@ public abstract class SwerveDriveBase extends SubsystemBase implements Drivetrai
     /* Protected Helper Methods */
     /****************************/
 
+    /**
+     * Resets the acceleration and setpoint limiters to the current robot speeds. Called when a 
+     * drive command starts so the limiters do not ramp from a stale state.
+     */
+    protected void resetLimiters() {
+        resetAccelLimiter();
+        resetSetpointLimiter();
+    }
+
     /**
      * Sets the current command to angle_rate_cmd if it is not already running
      */
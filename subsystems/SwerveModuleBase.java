@@ -25,8 +25,10 @@
 import frc.lib2960.util.*;
 import frc.lib2960.controllers.*;
 
+import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.geometry.*;
 
+import edu.wpi.first.wpilibj.TimedRobot;
 import edu.wpi.first.wpilibj2.command.*;
 
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
@@ -37,11 +39,11 @@ import edu.wpi.first.math.kinematics.SwerveModuleState;
  * designed to be used as a parent class for a swerve drive module class that implements access 
  * to the motors and sensors of the swerve module.
  */
-public abstract class SwerveDriveBase extends SubsystemBase {
+public abstract class SwerveModuleBase extends SubsystemBase {
     /**
      * Defines module settings
      */
-    public class Settings {
+    public static class Settings {
         
         public String name;                 /**< Human friendly module name */
         public Translation2d translation;   /**< Module translation */
@@ -83,13 +85,13 @@ public abstract class SwerveDriveBase extends SubsystemBase {
      * Automatic Swerve Drive Module Control Command
      */
     public class AutoCommand extends Command {
-        private final SwerveDriveBase module;   /**< Module to control */
+        private final SwerveModuleBase module;  /**< Module to control */
         
         /**
          * Constructor
          * @param   module  module for command to control
          */
-        public AutoCommand(SwerveDriveBase module) {
+        public AutoCommand(SwerveModuleBase module) {
             this.module = module;
 
             // Add module as required subsystem 
@@ -101,61 +103,84 @@ public abstract class SwerveDriveBase extends SubsystemBase {
          */
         @Override
         public void execute() {
+            module.command_probe.start();
             module.updateAutoControl();
+            module.command_probe.stop();
         }
 
     }
 
-    private final Settings settings;                /**< Module Settings */
+    public final Settings settings;                 /**< Module Settings */
 
     private final PositionController anglePosCtrl;  /**< Module Angle Position Controller */
     private final RateController angleRateCtrl;     /**< Module Angle Rate Controller */
     private final RateController driveRateCtrl;     /**< Module Drive Controller */
 
-    private SwerveModuleState desiredState;         /**< Most recent Module Desired State */
+    private double desired_speed;                   /**< Most recent desired drive speed */
+    private double desired_angle;                   /**< Most recent desired angle in degrees */
 
-    // Shuffleboard Elements
-    private GenericEntry sb_anglePosTarget;
-    private GenericEntry sb_anglePosCurrent;
-    private GenericEntry sb_angleVoltCurrent;
-    private GenericEntry sb_angleRateCurrent;
-    private GenericEntry sb_angleError;
+    // Fast Control Loop
+    private static final int SETPOINT_NONE = 0;
+    private static final int SETPOINT_STATE = 1;
 
-    private GenericEntry sb_driveRateTarget;
-    private GenericEntry sb_driveRateCurrent;
-    private GenericEntry sb_driveVolt;
+    private FastControlLoop fast_loop = null;       /**< Fast control loop. Null if disabled. */
+    private final SetpointSlot setpoint;            /**< Fast control loop desired state */
+    private final double[] fast_setpoint;           /**< Fast control loop desired state buffer */
+
+    private final PowerBudget.Consumer angle_power; /**< Angle motor current budget consumer */
+    private final PowerBudget.Consumer drive_power; /**< Drive motor current budget consumer */
+
+    // Telemetry
+    private static final int TLM_ANGLE_TARGET = 0;
+    private static final int TLM_ANGLE_CURRENT = 1;
+    private static final int TLM_ANGLE_VOLT = 2;
+    private static final int TLM_ANGLE_RATE = 3;
+    private static final int TLM_ANGLE_ERROR = 4;
+    private static final int TLM_DRIVE_TARGET = 5;
+    private static final int TLM_DRIVE_CURRENT = 6;
+    private static final int TLM_DRIVE_VOLT = 7;
+
+    private final TelemetryGroup telemetry;         /**< Module telemetry group */
+
+    // Loop Timing
+    private final LoopProfiler.Probe periodic_probe;    /**< Periodic method timing probe */
+    private final LoopProfiler.Probe command_probe;     /**< Internal command timing probe */
     
     /**
      * Constructor
      * @param   settings    module settings
      */
-    public SwerveDriveBase(Settings settings) {
+    public SwerveModuleBase(Settings settings) {
         // Initialize variables
         this.settings = settings;
 
-        this.anglePosCtrl = new PositionController(settings.anglPosCtrl);
-        this.driveCtrl = new RateController(settings.driveCtrl);
-        this.driveCtrl = new RateController(settings.driveCtrl);
+        this.anglePosCtrl = new PositionController(settings.anglePosCtrl);
+        this.angleRateCtrl = new RateController(settings.angleRateCtrl);
+        this.driveRateCtrl = new RateController(settings.driveRateCtrl);
 
-        desiredState = new SwerveModuleState();
+        desired_speed = 0;
+        desired_angle = 0;
 
-        // Set default command
-        setDefaultCommand(new AutoCommand(this));
+        setpoint = new SetpointSlot();
+        fast_setpoint = new double[2];
 
-        // Setup Shuffleboard
-        var layout = Shuffleboard.getTab("Drive")
-            .getLayout(settings.name + " Swerve", BuiltInLayouts.kList)
-            .withSize(1, 4);
+        // Initialize Loop Timing
+        periodic_probe = LoopProfiler.getInstance().register(settings.name + " Swerve periodic");
+        command_probe = LoopProfiler.getInstance().register(settings.name + " Swerve command");
 
-        sb_anglePosTarget = layout.add("Angle Target", 0).getEntry();
-        sb_anglePosCurrent = layout.add("Angle Current", 0).getEntry();
-        sb_angleVoltCurrent = layout.add("Angle Voltage", 0).getEntry();
-        sb_angleRateCurrent = layout.add("Angle Rate", 0).getEntry();
-        sb_angleError = layout.add("Angle Error", 0).getEntry();
+        // Register with the power budget
+        angle_power = PowerBudget.getInstance().register(settings.name + " Angle", PowerBudget.PRIORITY_HIGH);
+        drive_power = PowerBudget.getInstance().register(settings.name + " Drive", PowerBudget.PRIORITY_NORMAL);
+
+        // Set default command
+        setDefaultCommand(new AutoCommand(this));
 
-        sb_driveRateTarget = layout.add("Drive Target", 0).getEntry();
-        sb_driveRateCurrent = layout.add("Drive Current", 0).getEntry();
-        sb_driveVolt = layout.add("Drive Voltage", 0).getEntry();
+        // Setup Telemetry
+        telemetry = TelemetryRegistry.getInstance().register(
+            "Drive/" + settings.name + " Swerve",
+            "Angle Target", "Angle Current", "Angle Voltage", "Angle Rate", "Angle Error",
+            "Drive Target", "Drive Current", "Drive Voltage"
+        );
     }
     
     /**
@@ -173,7 +198,7 @@ public abstract class SwerveDriveBase extends SubsystemBase {
      * @return current swerve module state
      */
     public SwerveModuleState getState() {
-        return new SwerveModuleState(getDriveVelocity(),
+        return new SwerveModuleState(getDriveRate(),
                 getAnglePos());
     }
 
@@ -183,7 +208,73 @@ public abstract class SwerveDriveBase extends SubsystemBase {
      * @param desiredState desired state of the swerve module
      */
     public void setDesiredState(SwerveModuleState desiredState) {
-        this.desiredState = desiredState;
+        setDesiredState(desiredState.speedMetersPerSecond, desiredState.angle.getDegrees());
+    }
+
+    /**
+     * Sets the desired module state. Values are copied so the caller may reuse its buffers.
+     * 
+     * @param speed     desired drive speed of the swerve module
+     * @param angle     desired angle of the swerve module in degrees
+     */
+    public void setDesiredState(double speed, double angle) {
+        this.desired_speed = speed;
+        this.desired_angle = angle;
+
+        setpoint.write(SETPOINT_STATE, speed, angle);
+    }
+
+    /**
+     * Runs the angle and drive controllers on a dedicated periodic thread instead of in the 
+     * AutoCommand. The desired state is handed to the thread through a lock free slot. The 
+     * module sensor and output methods must be safe to call from another thread when this is 
+     * enabled.
+     * The controller update periods are set to the loop period while it runs.
+     * @param   period  fast loop period in seconds
+     */
+    public void enableFastLoop(double period) {
+        disableFastLoop();
+
+        setControlPeriod(period, period);
+
+        fast_loop = new FastControlLoop(settings.name + " Swerve Control", this::updateFastLoop, period);
+        fast_loop.start();
+    }
+
+    /**
+     * Stops the fast control loop. Controllers return to running in the AutoCommand.
+     */
+    public void disableFastLoop() {
+        if(fast_loop != null) {
+            fast_loop.close();
+            fast_loop = null;
+        }
+
+        setControlPeriod(settings.anglePosCtrl.period, TimedRobot.kDefaultPeriod);
+    }
+
+    /**
+     * Gets the fast control loop for access to its timing statistics
+     * @return  fast control loop. Null if the fast loop is disabled.
+     */
+    public FastControlLoop getFastLoop() {
+        return fast_loop;
+    }
+
+    /**
+     * Gets the angle motor current budget consumer. Used to change its priority.
+     * @return  angle motor current budget consumer
+     */
+    public PowerBudget.Consumer getAnglePowerConsumer() {
+        return angle_power;
+    }
+
+    /**
+     * Gets the drive motor current budget consumer. Used to change its priority.
+     * @return  drive motor current budget consumer
+     */
+    public PowerBudget.Consumer getDrivePowerConsumer() {
+        return drive_power;
     }
 
     /**
@@ -199,30 +290,76 @@ public abstract class SwerveDriveBase extends SubsystemBase {
      */
     @Override
     public void periodic() {
+        periodic_probe.start();
+
+        angle_power.reportCurrent(getAngleCurrent());
+        drive_power.reportCurrent(getDriveCurrent());
+
         updateUI();
+
+        periodic_probe.stop();
     }
 
     /**
-     * Updates module based on desired state
+     * Updates module based on desired state. Does nothing if the fast control loop is running.
      */
     private void updateAutoControl() {
-        SwerveModuleState state = SwerveModuleState.optimize(desiredState, getAnglePos());
+        if(fast_loop == null) updateAutoControl(desired_speed, desired_angle);
+    }
+
+    /**
+     * Runs one fast control loop cycle. Called by the fast control loop thread.
+     */
+    private void updateFastLoop() {
+        if(setpoint.read(fast_setpoint) != SETPOINT_NONE) updateAutoControl(fast_setpoint[0], fast_setpoint[1]);
+    }
 
-        updateAngle(state.angle);
-        updateDrive(state.speedMetersPerSecond);
+    /**
+     * Sets the update period of the angle and drive controllers
+     * @param   pos_period      angle position controller update period in seconds
+     * @param   rate_period     rate controller update period in seconds
+     */
+    private void setControlPeriod(double pos_period, double rate_period) {
+        anglePosCtrl.setPeriod(pos_period);
+        angleRateCtrl.setPeriod(rate_period);
+        driveRateCtrl.setPeriod(rate_period);
+    }
+
+    /**
+     * Updates module based on a desired state
+     * @param   speed   desired drive speed
+     * @param   angle   desired angle in degrees
+     */
+    private void updateAutoControl(double speed, double angle) {
+        double target_speed = speed;
+        double target_angle = angle;
+
+        // Optimize module state. Equivalent to SwerveModuleState.optimize.
+        double error = MathUtil.inputModulus(target_angle - getAnglePos().getDegrees(), -180, 180);
+
+        if(Math.abs(error) > 90) {
+            target_speed = -target_speed;
+            target_angle = MathUtil.inputModulus(target_angle + 180, -180, 180);
+        }
+
+        updateAngle(target_angle);
+        updateDrive(target_speed);
     }
 
     /**
      * Updates the angle position and rate controllers
+     * @param   target_pos  target angle in degrees
      */
-    private void updateAngle(Rotation2d target_angle) {
-        double current_pos = getAnglePos().asDegrees();
+    private void updateAngle(double target_pos) {
+        double current_pos = getAnglePos().getDegrees();
         double current_rate = getAngleRate();
-        double target_pos = target_angle.asDegrees();
         double target_rate = anglePosCtrl.update(current_pos, current_rate, target_pos);
-        double angle_volt = angleRateCtrl.update(current_pos, current_rate, target_rate);
+        double target_accel = anglePosCtrl.getTargetAccel();
+        double angle_volt = angleRateCtrl.update(current_pos, current_rate, target_rate, target_accel);
+        angle_volt *= angle_power.getScale();
         
         setAngleVolt(angle_volt);
+        angleRateCtrl.updateEstimator(angle_volt);
     }
     
     /**
@@ -230,22 +367,27 @@ public abstract class SwerveDriveBase extends SubsystemBase {
      */
     private void updateDrive(double target_rate) {
         // Calculate the drive output from the drive PID controller.
-        setDriveVolt(driveCtrl.update(0, getDriveRate(), target_rate));  
+        double drive_volt = driveRateCtrl.update(0, getDriveRate(), target_rate) * drive_power.getScale();
+
+        setDriveVolt(drive_volt);
+        driveRateCtrl.updateEstimator(drive_volt);
     }
 
     /**
-     * Updates shuffleboard
+     * Updates telemetry
      */
     private void updateUI() {
-        sb_anglePosTarget.setDouble(desiredState.angle.getDegrees());
-        sb_anglePosCurrent.setDouble(getAnglePos().getDegrees());
-        sb_angleVoltCurrent.setDouble(getAngleVolt());
-        sb_angleRateCurrent.setDouble(getAngleRate());
-        sb_angleError.setDouble(desiredState.angle.getDegrees() - getAnglePos().getDegrees());
-
-        sb_driveTarget.setDouble(desiredState.speedMetersPerSecond);
-        sb_driveCurrent.setDouble(getDriveVelocity());
-        sb_driveVolt.setDouble(mDrive.getMotorVoltage().getValueAsDouble());
+        double angle = getAnglePos().getDegrees();
+
+        telemetry.set(TLM_ANGLE_TARGET, desired_angle);
+        telemetry.set(TLM_ANGLE_CURRENT, angle);
+        telemetry.set(TLM_ANGLE_VOLT, getAngleVolt());
+        telemetry.set(TLM_ANGLE_RATE, getAngleRate());
+        telemetry.set(TLM_ANGLE_ERROR, desired_angle - angle);
+
+        telemetry.set(TLM_DRIVE_TARGET, desired_speed);
+        telemetry.set(TLM_DRIVE_CURRENT, getDriveRate());
+        telemetry.set(TLM_DRIVE_VOLT, getDriveVolt());
     }
 
     
@@ -256,6 +398,11 @@ public abstract class SwerveDriveBase extends SubsystemBase {
     public abstract double getDrivePos();
     public abstract double getDriveRate();
     public abstract double getDriveVolt();
+
+    // Current draw for the power budget. Override to report measured current. NaN tells the 
+    // budget the current is unknown, so it keeps the last demand estimate.
+    public double getAngleCurrent() { return Double.NaN; }
+    public double getDriveCurrent() { return Double.NaN; }
     
     public abstract void setAngleVolt(double volt);
     public abstract void setDriveVolt(double volt);
@@ -0,0 +1,115 @@
+/**
+ * Copyright 2024 Ryan Fitz-Gerald
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to 
+ * deal in the Software without restriction, including without limitation the 
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or 
+ * sell copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING 
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER 
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package frc.lib2960.util;
+
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.TimedRobot;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+
+/**
+ * Samples the robot bus voltage once per cycle and filters it for use by controllers that 
+ * compensate their output for battery sag. The filtered value may be read from any thread.
+ */
+public class BatteryMonitor extends SubsystemBase {
+    private static BatteryMonitor instance = null;  /**< Monitor instance */
+
+    private double period = TimedRobot.kDefaultPeriod;  /**< Sample period in seconds */
+    private double time_constant = 0.1;                 /**< Filter time constant in seconds */
+
+    private volatile double voltage = 12;               /**< Filtered bus voltage */
+    private volatile double raw_voltage = 12;           /**< Most recent unfiltered bus voltage */
+    private boolean is_seeded = false;                  /**< True once the first sample is taken */
+
+    /**
+     * Constructor
+     */
+    private BatteryMonitor() {}
+
+    /**
+     * Gets the battery monitor instance
+     * @return  battery monitor instance
+     */
+    public static BatteryMonitor getInstance() {
+        if(instance == null) instance = new BatteryMonitor();
+        return instance;
+    }
+
+    /**
+     * Sets the filter time constant
+     * @param   time_constant   filter time constant in seconds
+     */
+    public void setTimeConstant(double time_constant) {
+        this.time_constant = time_constant;
+    }
+
+    /**
+     * Sets the sample period. Should match the robot loop period.
+     * @param   period  sample period in seconds
+     */
+    public void setPeriod(double period) {
+        this.period = period;
+    }
+
+    /**
+     * Adds a bus voltage sample to the filter. Called once per cycle by periodic. May be 
+     * called directly to feed simulated bus voltage.
+     * @param   sample  bus voltage in volts
+     */
+    public void sample(double sample) {
+        raw_voltage = sample;
+
+        if(!is_seeded || time_constant <= 0) {
+            voltage = sample;
+            is_seeded = true;
+            return;
+        }
+
+        double alpha = period / (time_constant + period);
+        voltage = voltage + alpha * (sample - voltage);
+    }
+
+    /**
+     * Gets the filtered bus voltage
+     * @return  filtered bus voltage in volts
+     */
+    public double getVoltage() {
+        return voltage;
+    }
+
+    /**
+     * Gets the most recent unfiltered bus voltage
+     * @return  unfiltered bus voltage in volts
+     */
+    public double getRawVoltage() {
+        return raw_voltage;
+    }
+
+    /**
+     * Periodic method. Samples the bus voltage.
+     */
+    @Override
+    public void periodic() {
+        sample(RobotController.getBatteryVoltage());
+    }
+}
@@ -47,26 +47,26 @@ public class FFParam {
     }
 
     public static FFParam simpleMotor(double kS, double kV){
-        return new FFParam(SIMPLE, kS, kV, 0, 0);
+        return new FFParam(FFType.SIMPLE, kS, kV, 0, 0);
     }
 
     public static FFParam simpleMotor(double kS, double kV, double kA){
-        return new FFParam(SIMPLE, kS, kV, 0, kA);
+        return new FFParam(FFType.SIMPLE, kS, kV, 0, kA);
     }
 
     public static FFParam arm(double kS, double kV, double kG){
-        return new FFParam(ARM, kS, kV, kG, 0);
+        return new FFParam(FFType.ARM, kS, kV, kG, 0);
     }
 
     public static FFParam arm(double kS, double kV, double kG, double kA){
-        return new FFParam(ARM, kS, kV, kG, kA);
+        return new FFParam(FFType.ARM, kS, kV, kG, kA);
     }
 
     public static FFParam elevator(double kS, double kV, double kG){
-        return new FFParam(ELEVATOR, kS, kV, kG, 0);
+        return new FFParam(FFType.ELEVATOR, kS, kV, kG, 0);
     }
 
     public static FFParam elevator(double kS, double kV, double kG, double kA){
-        return new FFParam(ELEVATOR, kS, kV, kG, kA);
+        return new FFParam(FFType.ELEVATOR, kS, kV, kG, kA);
     }
 }
\ No newline at end of file
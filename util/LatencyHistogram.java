@@ -0,0 +1,143 @@
+/**
+ * Copyright 2024 Ryan Fitz-Gerald
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to 
+ * deal in the Software without restriction, including without limitation the 
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or 
+ * sell copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING 
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER 
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package frc.lib2960.util;
+
+/**
+ * Fixed bucket latency histogram. Buckets are spaced logarithmically with four buckets per 
+ * power of two, so recorded values are accurate to within 12.5%. Recording is a handful of 
+ * integer operations and does not allocate.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKETS = 4;   /**< Buckets per power of two */
+    private static final int MAX_EXPONENT = 40; /**< Largest power of two tracked. About 18 minutes in ns. */
+    private static final int BUCKET_COUNT = SUB_BUCKETS * (MAX_EXPONENT + 1);
+
+    private final long[] buckets;       /**< Sample count per bucket */
+    private long count = 0;             /**< Total sample count */
+    private long max = 0;               /**< Largest recorded value */
+    private long total = 0;             /**< Sum of recorded values */
+
+    /**
+     * Constructor
+     */
+    public LatencyHistogram() {
+        buckets = new long[BUCKET_COUNT];
+    }
+
+    /**
+     * Records a value
+     * @param   value   value to record in nanoseconds
+     */
+    public void record(long value) {
+        if(value < 0) value = 0;
+
+        buckets[getBucket(value)]++;
+        count++;
+        total += value;
+        if(value > max) max = value;
+    }
+
+    /**
+     * Gets an approximate percentile
+     * @param   percentile  percentile between 0 and 1
+     * @return  approximate value at the percentile in nanoseconds. 0 if empty.
+     */
+    public long getPercentile(double percentile) {
+        if(count == 0) return 0;
+
+        long target = Math.max(1, (long)Math.ceil(percentile * count));
+        long seen = 0;
+
+        for(int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets[i];
+            if(seen >= target) return Math.min(max, getBucketValue(i));
+        }
+
+        return max;
+    }
+
+    /**
+     * Gets the largest recorded value
+     * @return  largest recorded value in nanoseconds
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Gets the mean recorded value
+     * @return  mean recorded value in nanoseconds. 0 if empty.
+     */
+    public double getMean() {
+        return count > 0 ? (double)total / count : 0;
+    }
+
+    /**
+     * Gets the number of recorded values
+     * @return  number of recorded values
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Clears all recorded values
+     */
+    public void reset() {
+        for(int i = 0; i < BUCKET_COUNT; i++) buckets[i] = 0;
+        count = 0;
+        max = 0;
+        total = 0;
+    }
+
+    /**
+     * Gets the bucket index for a value
+     * @param   value   value in nanoseconds
+     * @return  bucket index
+     */
+    private static int getBucket(long value) {
+        if(value < SUB_BUCKETS) return (int)value;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if(exponent > MAX_EXPONENT) return BUCKET_COUNT - 1;
+
+        int sub = (int)(value >> (exponent - 2)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS * (exponent - 1) + sub;
+    }
+
+    /**
+     * Gets the midpoint value of a bucket
+     * @param   bucket  bucket index
+     * @return  bucket midpoint in nanoseconds
+     */
+    private static long getBucketValue(int bucket) {
+        if(bucket < SUB_BUCKETS) return bucket;
+
+        int exponent = bucket / SUB_BUCKETS + 1;
+        int sub = bucket % SUB_BUCKETS;
+        long width = 1L << (exponent - 2);
+
+        return (SUB_BUCKETS + sub) * width + width / 2;
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright 2024 Ryan Fitz-Gerald
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to 
+ * deal in the Software without restriction, including without limitation the 
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or 
+ * sell copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING 
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER 
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package frc.lib2960.util;
+
+import java.util.ArrayList;
+
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+
+/**
+ * Collects loop timing for lib2960 subsystems and commands. Each stage owns a probe that wraps 
+ * its work with System.nanoTime() calls and records the elapsed time in a latency histogram. 
+ * The profiler publishes p50, p99 and max for every stage through telemetry and can dump a 
+ * report on demand.
+ */
+public class LoopProfiler extends SubsystemBase {
+    /**
+     * Timing probe for one stage
+     */
+    public class Probe {
+        public final String name;                   /**< Stage name */
+        private final LatencyHistogram histogram;   /**< Stage latency histogram */
+        private final TelemetryGroup telemetry;     /**< Stage telemetry */
+        private long start_time = 0;                /**< Start time of the current run */
+
+        /**
+         * Constructor
+         * @param   name    Stage name
+         */
+        private Probe(String name) {
+            this.name = name;
+            this.histogram = new LatencyHistogram();
+            this.telemetry = TelemetryRegistry.getInstance()
+                .register("Timing/" + name, "p50 us", "p99 us", "Max us", "Count");
+        }
+
+        /**
+         * Marks the start of the stage
+         */
+        public void start() {
+            if(enabled) start_time = System.nanoTime();
+        }
+
+        /**
+         * Marks the end of the stage and records the elapsed time
+         */
+        public void stop() {
+            if(enabled) histogram.record(System.nanoTime() - start_time);
+        }
+
+        /**
+         * Gets the stage latency histogram
+         * @return  stage latency histogram
+         */
+        public LatencyHistogram getHistogram() {
+            return histogram;
+        }
+    }
+
+    private static LoopProfiler instance = null;    /**< Profiler instance */
+
+    private final ArrayList<Probe> probes;          /**< Registered probes */
+    private boolean enabled = true;                 /**< Profiling enable flag */
+
+    // Telemetry
+    private static final int TLM_P50 = 0;
+    private static final int TLM_P99 = 1;
+    private static final int TLM_MAX = 2;
+    private static final int TLM_COUNT = 3;
+
+    /**
+     * Constructor
+     */
+    private LoopProfiler() {
+        probes = new ArrayList<>();
+    }
+
+    /**
+     * Gets the loop profiler instance
+     * @return  loop profiler instance
+     */
+    public static LoopProfiler getInstance() {
+        if(instance == null) instance = new LoopProfiler();
+        return instance;
+    }
+
+    /**
+     * Registers a new probe
+     * @param   name    Stage name
+     * @return  new probe
+     */
+    public Probe register(String name) {
+        Probe probe = new Probe(name);
+        probes.add(probe);
+        return probe;
+    }
+
+    /**
+     * Enables or disables all probes
+     * @param   enabled     true to enable profiling
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Clears all recorded timing
+     */
+    public void reset() {
+        for(int i = 0; i < probes.size(); i++) probes.get(i).histogram.reset();
+    }
+
+    /**
+     * Builds a timing report for all stages
+     * @return  timing report
+     */
+    public String dump() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-40s %10s %10s %10s %10s%n", "Stage", "p50 us", "p99 us", "Max us", "Count"));
+
+        for(int i = 0; i < probes.size(); i++) {
+            Probe probe = probes.get(i);
+            LatencyHistogram histogram = probe.histogram;
+
+            report.append(String.format("%-40s %10.1f %10.1f %10.1f %10d%n", 
+                probe.name, 
+                histogram.getPercentile(0.5) * 1e-3, 
+                histogram.getPercentile(0.99) * 1e-3, 
+                histogram.getMax() * 1e-3, 
+                histogram.getCount()));
+        }
+
+        return report.toString();
+    }
+
+    /**
+     * Prints the timing report to the console
+     */
+    public void print() {
+        System.out.print(dump());
+    }
+
+    /**
+     * Periodic method. Updates the timing telemetry.
+     */
+    @Override
+    public void periodic() {
+        for(int i = 0; i < probes.size(); i++) {
+            Probe probe = probes.get(i);
+            LatencyHistogram histogram = probe.histogram;
+
+            probe.telemetry.set(TLM_P50, histogram.getPercentile(0.5) * 1e-3);
+            probe.telemetry.set(TLM_P99, histogram.getPercentile(0.99) * 1e-3);
+            probe.telemetry.set(TLM_MAX, histogram.getMax() * 1e-3);
+            probe.telemetry.set(TLM_COUNT, histogram.getCount());
+        }
+    }
+}
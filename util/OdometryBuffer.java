@@ -0,0 +1,170 @@
+/**
+ * Copyright 2024 Ryan Fitz-Gerald
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to 
+ * deal in the Software without restriction, including without limitation the 
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or 
+ * sell copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING 
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER 
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package frc.lib2960.util;
+
+/**
+ * Fixed size ring buffer of timestamped odometry samples. Samples are stored in primitive arrays 
+ * so adding and reading samples does not allocate. The buffer is safe for exactly one producer 
+ * thread and one consumer thread. Neither side ever blocks; if the buffer is full new samples are 
+ * dropped and counted.
+ */
+public class OdometryBuffer {
+    public final int capacity;                  /**< Maximum number of samples in the buffer */
+    public final int module_count;              /**< Number of swerve modules per sample */
+
+    private final double[] timestamps;          /**< Sample timestamps in seconds */
+    private final double[] gyro_angles;         /**< Robot angles in radians */
+    private final double[] drive_positions;     /**< Module drive positions */
+    private final double[] module_angles;       /**< Module angles in radians */
+
+    private volatile long write_count = 0;      /**< Number of samples published by the producer */
+    private volatile long read_count = 0;       /**< Number of samples released by the consumer */
+    private volatile long drop_count = 0;       /**< Number of samples dropped by the producer */
+
+    /**
+     * Constructor
+     * @param   capacity        Maximum number of samples in the buffer
+     * @param   module_count    Number of swerve modules per sample
+     */
+    public OdometryBuffer(int capacity, int module_count) {
+        this.capacity = capacity;
+        this.module_count = module_count;
+
+        timestamps = new double[capacity];
+        gyro_angles = new double[capacity];
+        drive_positions = new double[capacity * module_count];
+        module_angles = new double[capacity * module_count];
+    }
+
+    /**********************/
+    /* Producer Methods */
+    /**********************/
+
+    /**
+     * Adds a sample to the buffer. Must only be called from the producer thread.
+     * @param   timestamp       Sample timestamp in seconds
+     * @param   gyro_angle      Robot angle in radians
+     * @param   drive_pos       Module drive positions. Values are copied.
+     * @param   angles          Module angles in radians. Values are copied.
+     * @return  true if the sample was added, false if the buffer was full and the sample dropped
+     */
+    public boolean add(double timestamp, double gyro_angle, double[] drive_pos, double[] angles) {
+        long write = write_count;
+
+        if(write - read_count >= capacity) {
+            drop_count = drop_count + 1;
+            return false;
+        }
+
+        int slot = (int)(write % capacity);
+        int offset = slot * module_count;
+
+        timestamps[slot] = timestamp;
+        gyro_angles[slot] = gyro_angle;
+
+        for(int i = 0; i < module_count; i++) {
+            drive_positions[offset + i] = drive_pos[i];
+            module_angles[offset + i] = angles[i];
+        }
+
+        // Publish sample to the consumer
+        write_count = write + 1;
+
+        return true;
+    }
+
+    /**********************/
+    /* Consumer Methods */
+    /**********************/
+
+    /**
+     * Gets the number of samples ready to be read. Must only be called from the consumer thread.
+     * @return  number of samples ready to be read
+     */
+    public int available() {
+        return (int)(write_count - read_count);
+    }
+
+    /**
+     * Gets the timestamp of a sample
+     * @param   index   index of the sample relative to the oldest unread sample
+     * @return  sample timestamp in seconds
+     */
+    public double getTimestamp(int index) {
+        return timestamps[slot(index)];
+    }
+
+    /**
+     * Gets the robot angle of a sample
+     * @param   index   index of the sample relative to the oldest unread sample
+     * @return  robot angle in radians
+     */
+    public double getGyroAngle(int index) {
+        return gyro_angles[slot(index)];
+    }
+
+    /**
+     * Gets a module drive position of a sample
+     * @param   index   index of the sample relative to the oldest unread sample
+     * @param   module  module index
+     * @return  module drive position
+     */
+    public double getDrivePos(int index, int module) {
+        return drive_positions[slot(index) * module_count + module];
+    }
+
+    /**
+     * Gets a module angle of a sample
+     * @param   index   index of the sample relative to the oldest unread sample
+     * @param   module  module index
+     * @return  module angle in radians
+     */
+    public double getModuleAngle(int index, int module) {
+        return module_angles[slot(index) * module_count + module];
+    }
+
+    /**
+     * Releases read samples back to the producer
+     * @param   count   number of samples to release
+     */
+    public void release(int count) {
+        read_count = read_count + count;
+    }
+
+    /**
+     * Gets the number of samples dropped because the buffer was full
+     * @return  number of dropped samples
+     */
+    public long getDropCount() {
+        return drop_count;
+    }
+
+    /**
+     * Converts a read index to a buffer slot
+     * @param   index   index of the sample relative to the oldest unread sample
+     * @return  buffer slot
+     */
+    private int slot(int index) {
+        return (int)((read_count + index) % capacity);
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright 2024 Ryan Fitz-Gerald
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to 
+ * deal in the Software without restriction, including without limitation the 
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or 
+ * sell copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING 
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER 
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package frc.lib2960.util;
+
+import edu.wpi.first.math.MathUtil;
+
+/**
+ * Fixed capacity history of timestamped robot poses. Poses are stored in primitive arrays in a 
+ * ring buffer so recording and querying do not allocate. Queries use a binary search and 
+ * interpolate between the two nearest recorded poses.
+ */
+public class PoseHistory {
+    public final int capacity;      /**< Maximum number of recorded poses */
+    public final double window;     /**< Length of time poses are kept in seconds */
+
+    private final double[] times;   /**< Pose timestamps in seconds */
+    private final double[] pose_x;  /**< Pose x values */
+    private final double[] pose_y;  /**< Pose y values */
+    private final double[] pose_r;  /**< Pose angles in radians */
+
+    private int head = 0;           /**< Buffer index of the oldest pose */
+    private int count = 0;          /**< Number of recorded poses */
+
+    /**
+     * Constructor
+     * @param   window      Length of time poses are kept in seconds
+     * @param   capacity    Maximum number of recorded poses
+     */
+    public PoseHistory(double window, int capacity) {
+        this.window = window;
+        this.capacity = capacity;
+
+        times = new double[capacity];
+        pose_x = new double[capacity];
+        pose_y = new double[capacity];
+        pose_r = new double[capacity];
+    }
+
+    /**
+     * Records a pose. Poses older than the newest recorded pose are ignored. Poses outside of 
+     * the history window are discarded.
+     * @param   timestamp   Pose timestamp in seconds
+     * @param   x           Pose x value
+     * @param   y           Pose y value
+     * @param   r           Pose angle in radians
+     */
+    public void add(double timestamp, double x, double y, double r) {
+        if(count > 0 && timestamp < getTime(count - 1)) return;
+
+        // Discard oldest pose if full
+        if(count == capacity) {
+            head = (head + 1) % capacity;
+            count--;
+        }
+
+        int slot = (head + count) % capacity;
+        times[slot] = timestamp;
+        pose_x[slot] = x;
+        pose_y[slot] = y;
+        pose_r[slot] = r;
+        count++;
+
+        // Discard poses outside of the window
+        while(count > 1 && timestamp - times[head] > window) {
+            head = (head + 1) % capacity;
+            count--;
+        }
+    }
+
+    /**
+     * Clears all recorded poses
+     */
+    public void clear() {
+        head = 0;
+        count = 0;
+    }
+
+    /**
+     * Gets the interpolated pose at a timestamp. Timestamps outside of the recorded range return 
+     * the nearest recorded pose.
+     * @param   timestamp   Timestamp in seconds
+     * @param   result      Array of at least 3 values to hold the pose x, y, and angle in radians
+     * @return  true if a pose was found, false if no poses are recorded
+     */
+    public boolean getPoseAt(double timestamp, double[] result) {
+        if(count == 0) return false;
+
+        // Clamp to recorded range
+        if(timestamp <= getTime(0)) {
+            copyPose(0, result);
+            return true;
+        }
+
+        if(timestamp >= getTime(count - 1)) {
+            copyPose(count - 1, result);
+            return true;
+        }
+
+        // Find the first pose after the timestamp
+        int low = 1;
+        int high = count - 1;
+
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+
+            if(getTime(mid) <= timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        // Interpolate between surrounding poses
+        int before = (head + low - 1) % capacity;
+        int after = (head + low) % capacity;
+        double t = (timestamp - times[before]) / (times[after] - times[before]);
+        double angle_diff = MathUtil.angleModulus(pose_r[after] - pose_r[before]);
+
+        result[0] = pose_x[before] + (pose_x[after] - pose_x[before]) * t;
+        result[1] = pose_y[before] + (pose_y[after] - pose_y[before]) * t;
+        result[2] = MathUtil.angleModulus(pose_r[before] + angle_diff * t);
+
+        return true;
+    }
+
+    /**
+     * Gets the number of recorded poses
+     * @return  number of recorded poses
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Gets the timestamp of a recorded pose
+     * @param   index   index of the pose relative to the oldest pose
+     * @return  timestamp in seconds
+     */
+    private double getTime(int index) {
+        return times[(head + index) % capacity];
+    }
+
+    /**
+     * Copies a recorded pose into a result array
+     * @param   index   index of the pose relative to the oldest pose
+     * @param   result  Array to hold the pose x, y, and angle in radians
+     */
+    private void copyPose(int index, double[] result) {
+        int slot = (head + index) % capacity;
+        result[0] = pose_x[slot];
+        result[1] = pose_y[slot];
+        result[2] = pose_r[slot];
+    }
+}
@@ -0,0 +1,267 @@
+/**
+ * Copyright 2024 Ryan Fitz-Gerald
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to 
+ * deal in the Software without restriction, including without limitation the 
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or 
+ * sell copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING 
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER 
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package frc.lib2960.util;
+
+import java.util.ArrayList;
+
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+
+/**
+ * Central current budget arbiter. Consumers report their measured current every cycle and 
+ * scale their output by the scale the arbiter assigns. When the total demand exceeds the 
+ * budget, higher priority consumers are served first and the remaining budget is shared 
+ * proportionally within the priority level that no longer fits. Lower levels are denied. The 
+ * budget is reduced as the filtered bus voltage approaches brownout.
+ */
+public class PowerBudget extends SubsystemBase {
+    public static final int PRIORITY_LOW = 0;       /**< Low priority. Denied first. */
+    public static final int PRIORITY_NORMAL = 1;    /**< Normal priority */
+    public static final int PRIORITY_HIGH = 2;      /**< High priority. Served first. */
+
+    /**
+     * Current consumer registered with the power budget
+     */
+    public class Consumer {
+        public final String name;           /**< Consumer name */
+        private int priority;               /**< Consumer priority. Higher is served first. */
+        private double measured = 0;        /**< Most recent measured current in amps */
+        private double demand = 0;          /**< Estimated unscaled current demand in amps */
+        private boolean holding = false;    /**< Hold the last demand instead of measuring */
+        private volatile double scale = 1;  /**< Output scale assigned by the arbiter */
+
+        /**
+         * Constructor
+         * @param   name        Consumer name
+         * @param   priority    Consumer priority
+         */
+        private Consumer(String name, int priority) {
+            this.name = name;
+            this.priority = priority;
+        }
+
+        /**
+         * Reports the measured current draw. Call once per cycle. NaN means the current is 
+         * unknown and keeps the last demand estimate, like holdDemand.
+         * @param   current     measured current in amps. NaN if unknown.
+         */
+        public void reportCurrent(double current) {
+            if(Double.isNaN(current)) {
+                holding = true;
+                return;
+            }
+
+            measured = Math.abs(current);
+            holding = false;
+        }
+
+        /**
+         * Reports that the consumer is stopped because of the budget. Call once per cycle 
+         * instead of reportCurrent. The last running demand is held, so stopping does not free 
+         * budget that would restart the consumer right away.
+         */
+        public void holdDemand() {
+            holding = true;
+        }
+
+        /**
+         * Gets the output scale assigned by the arbiter. May be called from any thread.
+         * @return  output scale between 0 and 1
+         */
+        public double getScale() {
+            return enabled ? scale : 1;
+        }
+
+        /**
+         * Checks if the consumer is denied all output
+         * @return  true if the consumer is denied
+         */
+        public boolean isDenied() {
+            return getScale() <= 0;
+        }
+
+        /**
+         * Sets the consumer priority
+         * @param   priority    consumer priority. Higher is served first.
+         */
+        public void setPriority(int priority) {
+            this.priority = priority;
+        }
+
+        /**
+         * Gets the consumer priority
+         * @return  consumer priority
+         */
+        public int getPriority() {
+            return priority;
+        }
+    }
+
+    private static PowerBudget instance = null;     /**< Arbiter instance */
+
+    private final ArrayList<Consumer> consumers;    /**< Registered consumers */
+
+    private volatile boolean enabled = false;       /**< Arbiter enable flag */
+    private double budget = 300;                    /**< Total current budget in amps */
+    private double sag_voltage = 8.5;               /**< Bus voltage where the budget starts to 
+                                                         be reduced */
+    private double brownout_voltage = 6.8;          /**< Bus voltage where the budget is halved */
+    private double recovery_rate = 0.1;             /**< Maximum scale increase per cycle */
+    private double total_demand = 0;                /**< Total estimated demand in amps */
+    private double active_budget = 0;               /**< Budget for the last cycle in amps */
+
+    private final TelemetryGroup telemetry;         /**< Arbiter telemetry */
+
+    // Telemetry
+    private static final int TLM_DEMAND = 0;
+    private static final int TLM_BUDGET = 1;
+    private static final int TLM_LIMITED = 2;
+
+    /**
+     * Constructor
+     */
+    private PowerBudget() {
+        consumers = new ArrayList<>();
+        telemetry = TelemetryRegistry.getInstance().register("Status/Power Budget", "Demand", "Budget", "Limited");
+    }
+
+    /**
+     * Gets the power budget instance
+     * @return  power budget instance
+     */
+    public static PowerBudget getInstance() {
+        if(instance == null) instance = new PowerBudget();
+        return instance;
+    }
+
+    /**
+     * Registers a new consumer
+     * @param   name        Consumer name
+     * @param   priority    Consumer priority. Higher is served first.
+     * @return  new consumer
+     */
+    public Consumer register(String name, int priority) {
+        Consumer consumer = new Consumer(name, priority);
+        consumers.add(consumer);
+        return consumer;
+    }
+
+    /**
+     * Enables the arbiter with a total current budget. While disabled every consumer scale is 1.
+     * @param   budget  total current budget in amps
+     */
+    public void enable(double budget) {
+        this.budget = budget;
+        this.enabled = true;
+    }
+
+    /**
+     * Disables the arbiter
+     */
+    public void disable() {
+        this.enabled = false;
+    }
+
+    /**
+     * Sets the bus voltages used to reduce the budget near brownout
+     * @param   sag_voltage         bus voltage where the budget starts to be reduced
+     * @param   brownout_voltage    bus voltage where the budget is halved
+     */
+    public void setBrownoutVoltages(double sag_voltage, double brownout_voltage) {
+        this.sag_voltage = sag_voltage;
+        this.brownout_voltage = brownout_voltage;
+    }
+
+    /**
+     * Sets the maximum increase in a consumer scale per cycle once demand drops
+     * @param   recovery_rate   maximum scale increase per cycle
+     */
+    public void setRecoveryRate(double recovery_rate) {
+        this.recovery_rate = recovery_rate;
+    }
+
+    /**
+     * Gets the total estimated demand from the last cycle
+     * @return  total estimated demand in amps
+     */
+    public double getTotalDemand() {
+        return total_demand;
+    }
+
+    /**
+     * Periodic method. Allocates the budget to the consumers.
+     */
+    @Override
+    public void periodic() {
+        // Estimate unscaled demand. Keep the last estimate while a consumer is denied or stopped.
+        total_demand = 0;
+
+        for(int i = 0; i < consumers.size(); i++) {
+            Consumer consumer = consumers.get(i);
+            if(!consumer.holding && consumer.scale > 0.05) consumer.demand = consumer.measured / consumer.scale;
+            total_demand += consumer.demand;
+        }
+
+        // Reduce the budget as the bus voltage approaches brownout
+        double voltage = BatteryMonitor.getInstance().getVoltage();
+        double sag = (sag_voltage - voltage) / (sag_voltage - brownout_voltage);
+        active_budget = budget * (1 - 0.5 * Math.max(0, Math.min(1, sag)));
+
+        // Serve priority levels from highest to lowest
+        double remaining = active_budget;
+        int level = Integer.MAX_VALUE;
+        boolean limited = false;
+
+        while(true) {
+            int next_level = Integer.MIN_VALUE;
+            for(int i = 0; i < consumers.size(); i++) {
+                int priority = consumers.get(i).priority;
+                if(priority < level && priority > next_level) next_level = priority;
+            }
+
+            if(next_level == Integer.MIN_VALUE) break;
+            level = next_level;
+
+            double level_demand = 0;
+            for(int i = 0; i < consumers.size(); i++) {
+                if(consumers.get(i).priority == level) level_demand += consumers.get(i).demand;
+            }
+
+            double target = level_demand <= remaining ? 1 : Math.max(0, remaining / level_demand);
+            remaining = Math.max(0, remaining - level_demand);
+            if(target < 1) limited = true;
+
+            for(int i = 0; i < consumers.size(); i++) {
+                Consumer consumer = consumers.get(i);
+                if(consumer.priority != level) continue;
+
+                // Drop immediately, recover gradually
+                consumer.scale = target < consumer.scale ? target : Math.min(target, consumer.scale + recovery_rate);
+            }
+        }
+
+        telemetry.set(TLM_DEMAND, total_demand);
+        telemetry.set(TLM_BUDGET, active_budget);
+        telemetry.set(TLM_LIMITED, enabled && limited);
+    }
+}
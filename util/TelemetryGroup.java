@@ -0,0 +1,110 @@
+/**
+ * Copyright 2024 Ryan Fitz-Gerald
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to 
+ * deal in the Software without restriction, including without limitation the 
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or 
+ * sell copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING 
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER 
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package frc.lib2960.util;
+
+import edu.wpi.first.networktables.DoubleArrayPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.StringArrayPublisher;
+
+/**
+ * Group of telemetry values for a single subsystem. Values are packed into one double array 
+ * topic along with a string array topic listing the field names. Groups are created and 
+ * published by the TelemetryRegistry.
+ */
+public class TelemetryGroup {
+    public final String name;                       /**< Group name */
+    public final String[] fields;                   /**< Field names */
+
+    private final double[] values;                  /**< Most recent field values */
+    private final double[] published;               /**< Last published field values */
+    private boolean first_publish = true;           /**< Nothing has been published yet flag */
+
+    private final DoubleArrayPublisher values_pub;  /**< Field values publisher */
+    private final StringArrayPublisher fields_pub;  /**< Field names publisher */
+
+    /**
+     * Constructor
+     * @param   table   NetworkTables table to publish to
+     * @param   name    Group name
+     * @param   fields  Field names
+     */
+    TelemetryGroup(NetworkTable table, String name, String[] fields) {
+        this.name = name;
+        this.fields = fields;
+
+        values = new double[fields.length];
+        published = new double[fields.length];
+
+        values_pub = table.getDoubleArrayTopic(name).publish();
+        fields_pub = table.getStringArrayTopic(name + " Fields").publish();
+        fields_pub.set(fields);
+    }
+
+    /**
+     * Sets a field value
+     * @param   index   field index
+     * @param   value   new field value
+     */
+    public void set(int index, double value) {
+        values[index] = value;
+    }
+
+    /**
+     * Sets a boolean field value. Published as 1 for true and 0 for false.
+     * @param   index   field index
+     * @param   value   new field value
+     */
+    public void set(int index, boolean value) {
+        values[index] = value ? 1 : 0;
+    }
+
+    /**
+     * Gets a field value
+     * @param   index   field index
+     * @return  most recent field value
+     */
+    public double get(int index) {
+        return values[index];
+    }
+
+    /**
+     * Publishes the group if any field changed by more than the deadband since the last publish
+     * @param   deadband    minimum change required to publish
+     * @return  true if the group was published
+     */
+    boolean publish(double deadband) {
+        boolean changed = first_publish;
+
+        for(int i = 0; i < values.length && !changed; i++) {
+            changed = Math.abs(values[i] - published[i]) > deadband;
+        }
+
+        if(!changed) return false;
+
+        System.arraycopy(values, 0, published, 0, values.length);
+        values_pub.set(published);
+        first_publish = false;
+
+        return true;
+    }
+}
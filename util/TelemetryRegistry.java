@@ -0,0 +1,112 @@
+/**
+ * Copyright 2024 Ryan Fitz-Gerald
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to 
+ * deal in the Software without restriction, including without limitation the 
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or 
+ * sell copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING 
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER 
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package frc.lib2960.util;
+
+import java.util.ArrayList;
+
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+
+/**
+ * Central registry for lib2960 telemetry. Subsystems register a TelemetryGroup with their 
+ * fields and update the values every cycle. The registry publishes all groups at a lower rate 
+ * and skips groups whose values have not changed by more than the deadband.
+ */
+public class TelemetryRegistry extends SubsystemBase {
+    private static TelemetryRegistry instance = null;  /**< Registry instance */
+
+    private final NetworkTable table;                   /**< lib2960 telemetry table */
+    private final ArrayList<TelemetryGroup> groups;     /**< Registered telemetry groups */
+
+    private double period = 0.1;                        /**< Publish period in seconds */
+    private double deadband = 1e-3;                     /**< Minimum change to publish a group */
+    private double last_publish = 0;                    /**< Last publish time in seconds */
+
+    private LoopProfiler.Probe publish_probe = null;    /**< Publish timing probe. Created on 
+                                                             first publish because the profiler 
+                                                             registers its own telemetry. */
+
+    /**
+     * Constructor
+     */
+    private TelemetryRegistry() {
+        table = NetworkTableInstance.getDefault().getTable("lib2960");
+        groups = new ArrayList<>();
+    }
+
+    /**
+     * Gets the telemetry registry instance
+     * @return  telemetry registry instance
+     */
+    public static TelemetryRegistry getInstance() {
+        if(instance == null) instance = new TelemetryRegistry();
+        return instance;
+    }
+
+    /**
+     * Registers a new telemetry group
+     * @param   name    Group name
+     * @param   fields  Field names
+     * @return  new telemetry group
+     */
+    public TelemetryGroup register(String name, String... fields) {
+        TelemetryGroup group = new TelemetryGroup(table, name, fields);
+        groups.add(group);
+        return group;
+    }
+
+    /**
+     * Sets the telemetry publish period
+     * @param   period  publish period in seconds
+     */
+    public void setPublishPeriod(double period) {
+        this.period = period;
+    }
+
+    /**
+     * Sets the minimum change in any field value required to publish a group
+     * @param   deadband    minimum change required to publish
+     */
+    public void setDeadband(double deadband) {
+        this.deadband = deadband;
+    }
+
+    /**
+     * Periodic method. Publishes all groups if the publish period has elapsed.
+     */
+    @Override
+    public void periodic() {
+        double now = Timer.getFPGATimestamp();
+        if(now - last_publish < period) return;
+
+        last_publish = now;
+
+        if(publish_probe == null) publish_probe = LoopProfiler.getInstance().register("Telemetry publish");
+
+        publish_probe.start();
+        for(int i = 0; i < groups.size(); i++) groups.get(i).publish(deadband);
+        publish_probe.stop();
+    }
+}
@@ -0,0 +1,262 @@
+/**
+ * Copyright 2024 Ryan Fitz-Gerald
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the “Software”), to 
+ * deal in the Software without restriction, including without limitation the 
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or 
+ * sell copies of the Software, and to permit persons to whom the Software is 
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in 
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED “AS IS”, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR 
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE 
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER 
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING 
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER 
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package frc.lib2960.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded queue of vision pose measurements. Any number of threads may add measurements without 
+ * blocking while a single consumer thread drains them. Measurements are stored in primitive 
+ * arrays so neither side allocates. If the queue is full new measurements are dropped and 
+ * counted.
+ */
+public class VisionMeasurementQueue {
+    public final int capacity;                  /**< Maximum number of queued measurements */
+
+    private final AtomicLongArray sequences;    /**< Slot sequence numbers */
+    private final double[] slot_x;              /**< Queued pose x values */
+    private final double[] slot_y;              /**< Queued pose y values */
+    private final double[] slot_r;              /**< Queued pose angles in radians */
+    private final double[] slot_time;           /**< Queued timestamps in seconds */
+    private final double[] slot_std_dev;        /**< Queued standard deviations. NaN if unset. */
+
+    private final AtomicLong enqueue_pos = new AtomicLong(0);  /**< Next producer position */
+    private final AtomicLong drop_count = new AtomicLong(0);   /**< Dropped measurement count */
+    private volatile long dequeue_pos = 0;                     /**< Next consumer position */
+
+    // Drained measurements sorted by timestamp. Only accessed by the consumer.
+    private final double[] drain_x;
+    private final double[] drain_y;
+    private final double[] drain_r;
+    private final double[] drain_time;
+    private final double[] drain_std_dev;
+
+    /**
+     * Constructor
+     * @param   capacity    Maximum number of queued measurements
+     */
+    public VisionMeasurementQueue(int capacity) {
+        this.capacity = capacity;
+
+        sequences = new AtomicLongArray(capacity);
+        for(int i = 0; i < capacity; i++) sequences.set(i, i);
+
+        slot_x = new double[capacity];
+        slot_y = new double[capacity];
+        slot_r = new double[capacity];
+        slot_time = new double[capacity];
+        slot_std_dev = new double[capacity * 3];
+
+        drain_x = new double[capacity];
+        drain_y = new double[capacity];
+        drain_r = new double[capacity];
+        drain_time = new double[capacity];
+        drain_std_dev = new double[capacity * 3];
+    }
+
+    /**********************/
+    /* Producer Methods */
+    /**********************/
+
+    /**
+     * Adds a measurement using the pose estimator's default standard deviations. Safe to call 
+     * from any thread.
+     * @param   x           Pose x value
+     * @param   y           Pose y value
+     * @param   r           Pose angle in radians
+     * @param   timestamp   Timestamp of when the pose was captured
+     * @return  true if the measurement was queued, false if it was dropped
+     */
+    public boolean offer(double x, double y, double r, double timestamp) {
+        return offer(x, y, r, timestamp, Double.NaN, Double.NaN, Double.NaN);
+    }
+
+    /**
+     * Adds a measurement. Safe to call from any thread.
+     * @param   x           Pose x value
+     * @param   y           Pose y value
+     * @param   r           Pose angle in radians
+     * @param   timestamp   Timestamp of when the pose was captured
+     * @param   std_x       Standard deviation of the x value
+     * @param   std_y       Standard deviation of the y value
+     * @param   std_r       Standard deviation of the angle
+     * @return  true if the measurement was queued, false if it was dropped
+     */
+    public boolean offer(double x, double y, double r, double timestamp, 
+                         double std_x, double std_y, double std_r) {
+        long pos = enqueue_pos.get();
+        int slot;
+
+        // Claim a slot
+        while(true) {
+            slot = (int)(pos % capacity);
+            long diff = sequences.get(slot) - pos;
+
+            if(diff == 0) {
+                if(enqueue_pos.compareAndSet(pos, pos + 1)) break;
+                pos = enqueue_pos.get();
+            } else if(diff < 0) {
+                drop_count.incrementAndGet();
+                return false;
+            } else {
+                pos = enqueue_pos.get();
+            }
+        }
+
+        slot_x[slot] = x;
+        slot_y[slot] = y;
+        slot_r[slot] = r;
+        slot_time[slot] = timestamp;
+        slot_std_dev[slot * 3] = std_x;
+        slot_std_dev[slot * 3 + 1] = std_y;
+        slot_std_dev[slot * 3 + 2] = std_r;
+
+        // Publish slot to the consumer
+        sequences.set(slot, pos + 1);
+
+        return true;
+    }
+
+    /**********************/
+    /* Consumer Methods */
+    /**********************/
+
+    /**
+     * Moves all queued measurements into the drain buffer sorted by timestamp. Must only be 
+     * called from the consumer thread.
+     * @return  number of drained measurements
+     */
+    public int drain() {
+        int count = 0;
+        long pos = dequeue_pos;
+
+        while(count < capacity) {
+            int slot = (int)(pos % capacity);
+            if(sequences.get(slot) != pos + 1) break;
+
+            // Insertion sort by timestamp. Measurements usually arrive nearly in order.
+            double time = slot_time[slot];
+            int i = count;
+
+            while(i > 0 && drain_time[i - 1] > time) {
+                drain_x[i] = drain_x[i - 1];
+                drain_y[i] = drain_y[i - 1];
+                drain_r[i] = drain_r[i - 1];
+                drain_time[i] = drain_time[i - 1];
+                for(int j = 0; j < 3; j++) drain_std_dev[i * 3 + j] = drain_std_dev[(i - 1) * 3 + j];
+                i--;
+            }
+
+            drain_x[i] = slot_x[slot];
+            drain_y[i] = slot_y[slot];
+            drain_r[i] = slot_r[slot];
+            drain_time[i] = time;
+            for(int j = 0; j < 3; j++) drain_std_dev[i * 3 + j] = slot_std_dev[slot * 3 + j];
+
+            // Release slot to the producers
+            sequences.set(slot, pos + capacity);
+            pos++;
+            count++;
+        }
+
+        dequeue_pos = pos;
+
+        return count;
+    }
+
+    /**
+     * Gets a drained pose x value
+     * @param   index   drained measurement index
+     * @return  pose x value
+     */
+    public double getX(int index) {
+        return drain_x[index];
+    }
+
+    /**
+     * Gets a drained pose y value
+     * @param   index   drained measurement index
+     * @return  pose y value
+     */
+    public double getY(int index) {
+        return drain_y[index];
+    }
+
+    /**
+     * Gets a drained pose angle
+     * @param   index   drained measurement index
+     * @return  pose angle in radians
+     */
+    public double getAngle(int index) {
+        return drain_r[index];
+    }
+
+    /**
+     * Gets a drained measurement timestamp
+     * @param   index   drained measurement index
+     * @return  timestamp in seconds
+     */
+    public double getTimestamp(int index) {
+        return drain_time[index];
+    }
+
+    /**
+     * Checks if a drained measurement has standard deviations set
+     * @param   index   drained measurement index
+     * @return  true if standard deviations were provided
+     */
+    public boolean hasStdDev(int index) {
+        return !Double.isNaN(drain_std_dev[index * 3]);
+    }
+
+    /**
+     * Gets a drained measurement standard deviation
+     * @param   index   drained measurement index
+     * @param   axis    0 for x, 1 for y, 2 for angle
+     * @return  standard deviation
+     */
+    public double getStdDev(int index, int axis) {
+        return drain_std_dev[index * 3 + axis];
+    }
+
+    /**********************/
+    /* Counter Methods */
+    /**********************/
+
+    /**
+     * Gets the number of measurements dropped because the queue was full
+     * @return  number of dropped measurements
+     */
+    public long getDropCount() {
+        return drop_count.get();
+    }
+
+    /**
+     * Gets the number of measurements currently waiting in the queue
+     * @return  queue depth
+     */
+    public int getDepth() {
+        return (int)Math.max(0, enqueue_pos.get() - dequeue_pos);
+    }
+}